@@ -0,0 +1,74 @@
+package com.spotify.dashboard.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Compares a JMH run (-rf json) against the stored baseline, benchmark by benchmark:
+// throughput (ops/s) and allocation per call (gc.alloc.rate.norm, B/op, from -prof gc)
+// exits with 1 when something got slower or allocates more by more than the threshold (default 10%),
+// so it can gate a build. Allocation per op is the steadier of the two, throughput moves a few % between runs
+// usage: BaselineDiff <baseline.json> <result.json> [threshold %]
+public final class BaselineDiff {
+
+    private record Score(double opsPerSecond, double bytesPerOp) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineDiff <baseline.json> <result.json> [threshold %]");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> current = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        boolean regressed = false;
+        System.out.printf("%-58s %14s %14s %8s %12s %12s %8s%n", "benchmark", "base ops/s", "ops/s", "change",
+            "base B/op", "B/op", "change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-58s %14s %14.1f %8s %12s %12.1f %8s%n", entry.getKey(), "-", after.opsPerSecond(), "new",
+                    "-", after.bytesPerOp(), "new");
+                continue;
+            }
+            double speed = change(before.opsPerSecond(), after.opsPerSecond());
+            double allocation = change(before.bytesPerOp(), after.bytesPerOp());
+            boolean worse = speed < -threshold || allocation > threshold;
+            regressed |= worse;
+            System.out.printf("%-58s %14.1f %14.1f %+7.1f%% %12.1f %12.1f %+7.1f%%%s%n", entry.getKey(),
+                before.opsPerSecond(), after.opsPerSecond(), speed, before.bytesPerOp(), after.bytesPerOp(), allocation,
+                worse ? "  <-- regression" : "");
+        }
+        for (String missing : baseline.keySet()) {
+            if (!current.containsKey(missing)) {
+                System.out.printf("%-58s (in the baseline, not in this run)%n", missing);
+            }
+        }
+        System.exit(regressed ? 1 : 0);
+    }
+
+    private static double change(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before * 100.0;
+    }
+
+    // benchmark name (without the package, plus params if any) -> score
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            String name = run.path("benchmark").asText().replace("com.spotify.dashboard.service.", "");
+            if (run.has("params")) {
+                name += " " + run.get("params");
+            }
+            JsonNode allocation = run.path("secondaryMetrics").path("gc.alloc.rate.norm").path("score");
+            scores.put(name, new Score(run.path("primaryMetric").path("score").asDouble(),
+                allocation.isMissingNode() ? 0 : allocation.asDouble()));
+        }
+        return scores;
+    }
+}
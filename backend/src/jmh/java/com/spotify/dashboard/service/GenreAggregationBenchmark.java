@@ -0,0 +1,47 @@
+package com.spotify.dashboard.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.GenreBreakdown;
+import com.spotify.dashboard.model.Paging;
+
+// The genre breakdown /analytics/genres and /dashboard compute per time range: 50 artists -> top 10 genres
+// one aggregator for the whole run like GenreAnalyticsEngine has, so its genre dictionary is warm
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenreAggregationBenchmark {
+
+    private final GenreAggregator aggregator = new GenreAggregator(10);
+    private List<Artist> artists;
+
+    @Setup
+    public void setUp() throws IOException {
+        Paging<Artist> page = new ObjectMapper().readValue(new SpotifyPayloads(42).topArtists(50), new TypeReference<Paging<Artist>>() {});
+        artists = page.items();
+    }
+
+    @Benchmark
+    public GenreBreakdown summarize() {
+        return aggregator.summarize(artists);
+    }
+}
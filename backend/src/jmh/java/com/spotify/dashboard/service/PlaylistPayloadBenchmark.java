@@ -0,0 +1,78 @@
+package com.spotify.dashboard.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+
+// The CPU side of generating a 500 track playlist: picking the track URIs out of 10 pages of top tracks
+// (PlaylistBuilder.uniqueUris / interleave for the all-time mix) and turning them into the 100-URI JSON bodies
+// the add calls send (what SpotifyApiService does with Map.of("uris", chunk))
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlaylistPayloadBenchmark {
+
+    private static final int TRACK_COUNT = PlaylistBuilder.MAX_TRACKS;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Track> tracks;
+    private List<List<Track>> ranges;
+    private List<String> uris;
+
+    @Setup
+    public void setUp() throws IOException {
+        SpotifyPayloads payloads = new SpotifyPayloads(42);
+        ranges = new ArrayList<>();
+        for (int range = 0; range < 3; range++) {
+            List<Track> rangeTracks = new ArrayList<>();
+            for (int page = 0; page < TRACK_COUNT / PlaylistBuilder.PAGE_SIZE; page++) {
+                rangeTracks.addAll(objectMapper.readValue(payloads.topTracks(PlaylistBuilder.PAGE_SIZE),
+                    new TypeReference<Paging<Track>>() {}).items());
+            }
+            ranges.add(rangeTracks);
+        }
+        tracks = ranges.get(0);
+        uris = new ArrayList<>(PlaylistBuilder.uniqueUris(tracks, TRACK_COUNT));
+    }
+
+    @Benchmark
+    public Object uniqueUris() {
+        return PlaylistBuilder.uniqueUris(tracks, TRACK_COUNT);
+    }
+
+    @Benchmark
+    public List<String> interleave() {
+        return PlaylistBuilder.interleave(ranges, TRACK_COUNT);
+    }
+
+    @Benchmark
+    public int addTrackBodies() throws IOException {
+        int bytes = 0;
+        for (int start = 0; start < uris.size(); start += PlaylistBuilder.ADD_BATCH_SIZE) {
+            List<String> chunk = uris.subList(start, Math.min(start + PlaylistBuilder.ADD_BATCH_SIZE, uris.size()));
+            bytes += objectMapper.writeValueAsBytes(Map.of("uris", chunk)).length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,41 @@
+package com.spotify.dashboard.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+
+// What every Spotify call pays for its headers: createHeaders, then copying them onto the request the way send() does
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestHeadersBenchmark {
+
+    private final String accessToken = "BQD" + "x".repeat(200); // Spotify access tokens are ~200 characters
+    private final String url = "https://api.spotify.com/v1/me/top/tracks?time_range=medium_term&limit=50&offset=0";
+
+    @Benchmark
+    public HttpHeaders createHeaders() {
+        return SpotifyApiService.createHeaders(accessToken);
+    }
+
+    @Benchmark
+    public SimpleHttpRequest buildRequest() {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.get(url);
+        SpotifyApiService.createHeaders(accessToken).forEach((name, values) -> values.forEach(value -> builder.addHeader(name, value)));
+        return builder.build();
+    }
+}
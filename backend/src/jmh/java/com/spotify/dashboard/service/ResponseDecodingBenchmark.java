@@ -0,0 +1,73 @@
+package com.spotify.dashboard.service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+
+// Decoding a 50 item top tracks / top artists response (~180 KB / ~33 KB of JSON)
+// "typed" is what SpotifyApiService does now (records, unknown fields skipped), "map" is the old
+// Map<String, Object> form the controller used to return, kept to see what the typed readers buy us
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseDecodingBenchmark {
+
+    private byte[] topTracks;
+    private byte[] topArtists;
+    private ObjectReader mapReader;
+    private ObjectReader trackPageReader;
+    private ObjectReader artistPageReader;
+
+    @Setup
+    public void setUp() {
+        SpotifyPayloads payloads = new SpotifyPayloads(42);
+        topTracks = payloads.topTracks(50);
+        topArtists = payloads.topArtists(50);
+        // same readers SpotifyApiService builds
+        ObjectMapper objectMapper = new ObjectMapper();
+        mapReader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {});
+        trackPageReader = objectMapper.readerFor(new TypeReference<Paging<Track>>() {});
+        artistPageReader = objectMapper.readerFor(new TypeReference<Paging<Artist>>() {});
+    }
+
+    @Benchmark
+    public Paging<Track> topTracksTyped() throws IOException {
+        return trackPageReader.readValue(topTracks);
+    }
+
+    @Benchmark
+    public Map<String, Object> topTracksMap() throws IOException {
+        return mapReader.readValue(topTracks);
+    }
+
+    @Benchmark
+    public Paging<Artist> topArtistsTyped() throws IOException {
+        return artistPageReader.readValue(topArtists);
+    }
+
+    @Benchmark
+    public Map<String, Object> topArtistsMap() throws IOException {
+        return mapReader.readValue(topArtists);
+    }
+}
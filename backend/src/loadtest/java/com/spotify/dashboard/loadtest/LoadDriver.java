@@ -0,0 +1,299 @@
+package com.spotify.dashboard.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+// Runs full dashboard sessions against the backend and reports throughput and latency percentiles
+// a session is what someone opening the dashboard does: log in (first time only, after that the session cookie is
+// reused like the browser does), load the dashboard, the genre breakdown, flip through the other two time ranges,
+// open the short term top tracks and the rank movement, and every --playlist-every'th session generate a playlist
+// --concurrency sessions run at once, back to back, spread over --users users. Only what finishes after --warmup counts
+// point the backend at SpotifyStandIn (--spring.profiles.active=loadtest) so nothing here touches the real Spotify
+// run: mvn -P loadtest test-compile exec:exec@drive -Dload.args="--concurrency=20 --duration=60s"
+public final class LoadDriver {
+
+    private static final String API = "/api/spotify";
+    private static final String SESSION_COOKIE = "spotify_session";
+
+    // Latencies of one step, in microseconds. One per worker thread, merged at the end, so no locking on the hot path
+    private static final class Latencies {
+        long[] values = new long[1024];
+        int size;
+
+        void add(long micros) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = micros;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        long percentile(double p) {
+            return size == 0 ? 0 : values[Math.min(size - 1, (int) Math.ceil(p / 100.0 * size) - 1)];
+        }
+    }
+
+    private final String target;
+    private final int users;
+    private final int concurrency;
+    private final Duration duration;
+    private final Duration warmup;
+    private final Duration thinkTime;
+    private final int playlistEvery;
+    private final boolean gzip;
+    private final boolean etags;
+    private final String out;
+
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> sessions = new ConcurrentHashMap<>(); // user -> session cookie value
+    private final Map<String, String> etagsSeen = new ConcurrentHashMap<>(); // user + url -> ETag
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>(); // "dashboard 200" -> count
+    private final AtomicLong sessionCounter = new AtomicLong();
+    private final List<Map<String, Latencies>> perWorker = new ArrayList<>();
+    private final List<long[]> bytesPerWorker = new ArrayList<>(); // [requests, body bytes, failed sessions]
+    private volatile long measureFrom;
+    private volatile long measureUntil;
+
+    LoadDriver(Options options) {
+        this.target = options.string("target", "http://localhost:8080");
+        this.users = options.integer("users", 200);
+        this.concurrency = options.integer("concurrency", 20);
+        this.duration = options.duration("duration", "60s");
+        this.warmup = options.duration("warmup", "10s");
+        this.thinkTime = options.duration("think-time", "0ms"); // pause between steps, 0 = as fast as possible
+        this.playlistEvery = options.integer("playlist-every", 20); // 0 = never
+        this.gzip = options.flag("gzip", true); // Accept-Encoding: gzip like a browser
+        this.etags = options.flag("etags", false); // send If-None-Match with the last ETag, like a browser reloading
+        this.out = options.string("out", ""); // also write the results as JSON here
+        options.rejectUnknown();
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadDriver(Options.parse(args)).run();
+    }
+
+    void run() throws Exception {
+        System.out.printf("%d concurrent sessions over %d users against %s, %ds warmup + %ds measured%n",
+            concurrency, users, target, warmup.toSeconds(), duration.toSeconds());
+        long start = System.nanoTime();
+        measureFrom = start + warmup.toNanos();
+        measureUntil = measureFrom + duration.toNanos();
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < concurrency; w++) {
+            Map<String, Latencies> latencies = new HashMap<>();
+            long[] counters = new long[3];
+            perWorker.add(latencies);
+            bytesPerWorker.add(counters);
+            Thread worker = new Thread(() -> work(latencies, counters), "load-" + w);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report();
+    }
+
+    private void work(Map<String, Latencies> latencies, long[] counters) {
+        while (System.nanoTime() < measureUntil) {
+            long session = sessionCounter.incrementAndGet();
+            String user = "loadtest-user-" + (session % users);
+            long started = System.nanoTime();
+            boolean ok = session(user, session, latencies, counters);
+            if (started >= measureFrom && System.nanoTime() <= measureUntil) {
+                latencies.computeIfAbsent(ok ? "session" : "session (failed)", key -> new Latencies())
+                    .add((System.nanoTime() - started) / 1000);
+                if (!ok) {
+                    counters[2]++;
+                }
+            }
+        }
+    }
+
+    // false if any step failed
+    private boolean session(String user, long session, Map<String, Latencies> latencies, long[] counters) {
+        boolean ok = true;
+        if (!sessions.containsKey(user)) {
+            ok = login(user, latencies, counters);
+            if (!ok) {
+                return false;
+            }
+        }
+        ok &= get(user, "dashboard", "/dashboard?time_range=medium_term", latencies, counters);
+        ok &= get(user, "analytics/genres", "/analytics/genres?time_range=medium_term", latencies, counters);
+        ok &= get(user, "dashboard", "/dashboard?time_range=short_term", latencies, counters);
+        ok &= get(user, "dashboard", "/dashboard?time_range=long_term", latencies, counters);
+        ok &= get(user, "top/tracks", "/top/tracks?time_range=short_term&limit=50", latencies, counters);
+        ok &= get(user, "history/rank-movement", "/history/rank-movement?kind=tracks&days=30", latencies, counters);
+        if (playlistEvery > 0 && session % playlistEvery == 0) {
+            ok &= call(user, "playlists/generate", HttpRequest.newBuilder(URI.create(target + API + "/playlists/generate"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"template\":\"all-time-mix\",\"time_range\":\"medium_term\","
+                    + "\"name\":\"Load test\",\"track_count\":100}")), latencies, counters) != null;
+        }
+        return ok;
+    }
+
+    private boolean login(String user, Map<String, Latencies> latencies, long[] counters) {
+        HttpResponse<byte[]> response = call(null, "auth/callback", HttpRequest.newBuilder(URI.create(target + API + "/auth/callback"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"code\":\"" + user + "\"}")), latencies, counters);
+        if (response == null) {
+            return false;
+        }
+        // the backend keeps the Spotify tokens, all we get is the session cookie
+        for (String cookie : response.headers().allValues("Set-Cookie")) {
+            if (cookie.startsWith(SESSION_COOKIE + "=")) {
+                sessions.put(user, cookie.substring(SESSION_COOKIE.length() + 1).split(";", 2)[0]);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean get(String user, String step, String path, Map<String, Latencies> latencies, long[] counters) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(target + API + path)).GET();
+        String etag = etags ? etagsSeen.get(user + path) : null;
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        HttpResponse<byte[]> response = call(user, step, request, latencies, counters);
+        if (response != null && etags) {
+            response.headers().firstValue("ETag").ifPresent(value -> etagsSeen.put(user + path, value));
+        }
+        return response != null;
+    }
+
+    // null if it failed (anything but 2xx/304). A 401 means the session is over, so that user logs in again next time
+    private HttpResponse<byte[]> call(String user, String step, HttpRequest.Builder request, Map<String, Latencies> latencies,
+                                      long[] counters) {
+        if (user != null) {
+            request.header("Cookie", SESSION_COOKIE + "=" + sessions.get(user));
+        }
+        if (gzip) {
+            request.header("Accept-Encoding", "gzip");
+        }
+        request.timeout(Duration.ofSeconds(30));
+        pause();
+        long started = System.nanoTime();
+        HttpResponse<byte[]> response;
+        String status;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            status = String.valueOf(response.statusCode());
+        } catch (IOException e) {
+            response = null;
+            status = e.getClass().getSimpleName();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        long finished = System.nanoTime();
+        if (started >= measureFrom && finished <= measureUntil) {
+            latencies.computeIfAbsent(step, key -> new Latencies()).add((finished - started) / 1000);
+            statuses.computeIfAbsent(step + " " + status, key -> new LongAdder()).increment();
+            counters[0]++;
+            counters[1] += response != null ? response.body().length : 0;
+        }
+        if (response == null) {
+            return null;
+        }
+        if (response.statusCode() == 401 && user != null) {
+            sessions.remove(user);
+        }
+        boolean ok = response.statusCode() / 100 == 2 || response.statusCode() == 304;
+        return ok ? response : null;
+    }
+
+    private void pause() {
+        if (!thinkTime.isZero()) {
+            try {
+                Thread.sleep(thinkTime.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void report() throws IOException {
+        Map<String, Latencies> merged = new TreeMap<>();
+        long requests = 0;
+        long bytes = 0;
+        long failedSessions = 0;
+        for (int w = 0; w < perWorker.size(); w++) {
+            perWorker.get(w).forEach((step, latencies) -> merged.computeIfAbsent(step, key -> new Latencies()).addAll(latencies));
+            requests += bytesPerWorker.get(w)[0];
+            bytes += bytesPerWorker.get(w)[1];
+            failedSessions += bytesPerWorker.get(w)[2];
+        }
+        merged.values().forEach(latencies -> Arrays.sort(latencies.values, 0, latencies.size));
+        double seconds = duration.toNanos() / 1e9;
+        Latencies sessions = merged.getOrDefault("session", new Latencies());
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("sessions", sessions.size);
+        results.put("failed_sessions", failedSessions);
+        results.put("sessions_per_second", round(sessions.size / seconds));
+        results.put("requests", requests);
+        results.put("requests_per_second", round(requests / seconds));
+        results.put("bytes_per_request", requests > 0 ? bytes / requests : 0);
+        Map<String, Object> steps = new LinkedHashMap<>();
+        System.out.printf("%nsessions: %d ok, %d failed (%.1f/s)   requests: %d (%.1f/s, %d bytes each on average)%n",
+            sessions.size, failedSessions, sessions.size / seconds, requests, requests / seconds, requests > 0 ? bytes / requests : 0);
+        System.out.printf("%-24s %8s %9s %9s %9s %9s %9s%n", "step", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        merged.forEach((step, latencies) -> {
+            System.out.printf("%-24s %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", step, latencies.size, latencies.percentile(50) / 1000.0,
+                latencies.percentile(90) / 1000.0, latencies.percentile(99) / 1000.0, latencies.percentile(99.9) / 1000.0,
+                latencies.percentile(100) / 1000.0);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", latencies.size);
+            summary.put("p50_ms", latencies.percentile(50) / 1000.0);
+            summary.put("p90_ms", latencies.percentile(90) / 1000.0);
+            summary.put("p99_ms", latencies.percentile(99) / 1000.0);
+            summary.put("p999_ms", latencies.percentile(99.9) / 1000.0);
+            summary.put("max_ms", latencies.percentile(100) / 1000.0);
+            steps.put(step, summary);
+        });
+        Map<String, Long> byStatus = new TreeMap<>();
+        statuses.forEach((key, count) -> byStatus.put(key, count.sum()));
+        System.out.println("statuses: " + byStatus);
+        results.put("steps", steps);
+        results.put("statuses", byStatus);
+        if (!out.isEmpty()) {
+            objectMapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(out), results);
+            System.out.println("results written to " + out);
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
@@ -0,0 +1,68 @@
+package com.spotify.dashboard.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.boot.convert.DurationStyle;
+
+// --name=value / --name value command line options for the stand-in and the load driver
+// every option has a default, asking for one that wasn't given returns that; unknown ones are an error
+// so a typo doesn't silently run with the default
+final class Options {
+
+    private final Map<String, String> values = new HashMap<>();
+    private final Set<String> used = new TreeSet<>();
+
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                options.values.put(arg.substring(2, equals), arg.substring(equals + 1));
+            } else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.values.put(arg.substring(2), args[++i]);
+            } else {
+                options.values.put(arg.substring(2), "true");
+            }
+        }
+        return options;
+    }
+
+    String string(String name, String defaultValue) {
+        used.add(name);
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int integer(String name, int defaultValue) {
+        return Integer.parseInt(string(name, String.valueOf(defaultValue)));
+    }
+
+    double decimal(String name, double defaultValue) {
+        return Double.parseDouble(string(name, String.valueOf(defaultValue)));
+    }
+
+    boolean flag(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(string(name, String.valueOf(defaultValue)));
+    }
+
+    // "30s", "250ms", "2m", or a plain number of milliseconds
+    Duration duration(String name, String defaultValue) {
+        return DurationStyle.detectAndParse(string(name, defaultValue));
+    }
+
+    // call once every option has been read
+    void rejectUnknown() {
+        Set<String> unknown = new TreeSet<>(values.keySet());
+        unknown.removeAll(used);
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + unknown + ", known ones are " + used);
+        }
+    }
+}
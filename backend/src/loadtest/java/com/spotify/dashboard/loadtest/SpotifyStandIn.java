@@ -0,0 +1,328 @@
+package com.spotify.dashboard.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.dashboard.service.SpotifyPayloads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// A local stand-in for the parts of the Spotify Web API (and the accounts service) the backend calls,
+// so it can be load tested without real accounts, the real rate limits, or the internet
+// - GET /v1/me, /v1/me/top/tracks, /v1/me/top/artists, /v1/artists?ids=
+// - POST /v1/users/{id}/playlists, /v1/playlists/{id}/tracks
+// - POST /api/token (authorization_code and refresh_token grants)
+// payloads come from SpotifyPayloads: a pool of generated pages, each user + time range always gets the same one
+// every /v1 call waits a random time from a log-normal distribution (set by its median and p99),
+// then may fail with a 5xx (--error-rate), a random 429 (--throttle-rate), or a 429 because the whole server went
+// over --rate-limit calls in the current second, like Spotify's rolling window. 429s carry Retry-After
+// the user is in the token: the code "alice" logs in as user "alice", any token we didn't hand out is its own user
+// run: mvn -P loadtest test-compile exec:exec@standin -Dstandin.args="--port=9300 --latency-median=40ms"
+public final class SpotifyStandIn {
+
+    private static final double Z_99 = 2.3263; // p99 of the standard normal
+    private static final int PAGE_SIZE = 50;
+
+    private final int port;
+    private final int threads;
+    private final long medianMicros;
+    private final double sigma;
+    private final double errorRate;
+    private final double throttleRate;
+    private final int rateLimit;
+    private final long retryAfterSeconds;
+    private final int tokenLifetimeSeconds;
+    private final int topTracksTotal;
+    private final Duration reportInterval;
+
+    private final List<List<byte[]>> trackPages = new ArrayList<>(); // variant -> 50 track items
+    private final List<List<byte[]>> artistPages = new ArrayList<>();
+    private final List<String> artistIds = new ArrayList<>(); // every pooled artist, and its JSON with the id in it
+    private final List<String> artistJson = new ArrayList<>();
+    private final byte[] profileTemplate;
+
+    // current one second window, for --rate-limit
+    private final AtomicLong windowSecond = new AtomicLong();
+    private final AtomicLong windowCalls = new AtomicLong();
+    private final AtomicLong tokenCounter = new AtomicLong();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>(); // "GET /v1/me 200" -> calls
+
+    SpotifyStandIn(Options options) {
+        this.port = options.integer("port", 9300);
+        this.threads = options.integer("threads", 256); // each waiting call holds one, so this caps concurrent calls
+        Duration median = options.duration("latency-median", "30ms");
+        Duration p99 = options.duration("latency-p99", "150ms");
+        this.medianMicros = median.toNanos() / 1000;
+        this.sigma = p99.compareTo(median) > 0 ? Math.log((double) p99.toNanos() / median.toNanos()) / Z_99 : 0;
+        this.errorRate = options.decimal("error-rate", 0);
+        this.throttleRate = options.decimal("throttle-rate", 0);
+        this.rateLimit = options.integer("rate-limit", 0); // calls per second for the whole server, 0 = no limit
+        this.retryAfterSeconds = options.integer("retry-after", 1);
+        this.tokenLifetimeSeconds = options.integer("token-lifetime", 3600);
+        this.topTracksTotal = options.integer("top-tracks-total", 500);
+        this.reportInterval = options.duration("report-interval", "10s");
+        int variants = options.integer("variants", 32);
+        options.rejectUnknown();
+
+        SpotifyPayloads payloads = new SpotifyPayloads(7);
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (int v = 0; v < variants; v++) {
+            trackPages.add(payloads.trackItems(PAGE_SIZE));
+            List<byte[]> artists = payloads.artistItems(PAGE_SIZE);
+            artistPages.add(artists);
+            for (byte[] artist : artists) {
+                try {
+                    artistIds.add(objectMapper.readTree(artist).get("id").asText());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                artistJson.add(new String(artist, StandardCharsets.UTF_8));
+            }
+        }
+        this.profileTemplate = payloads.profile("USER_ID");
+    }
+
+    public static void main(String[] args) throws IOException {
+        SpotifyStandIn standIn = new SpotifyStandIn(Options.parse(args));
+        standIn.start();
+    }
+
+    void start() throws IOException {
+        // the JDK server keeps at most 200 idle keep-alive connections and silently closes the rest, the backend's pools
+        // hold more than that at 1000+ sessions, and a POST (the token exchange) sent on a closed one isn't retried
+        // read once when the server classes load, so a -D on the command line still wins
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(Math.max(200, threads)));
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 4096);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.createContext("/", this::handle);
+        server.start();
+        System.out.printf("Spotify stand-in on http://localhost:%d (base-url http://localhost:%d/v1, token-url "
+            + "http://localhost:%d/api/token), latency median %dms / sigma %.2f, errors %.1f%%, random 429s %.1f%%, "
+            + "rate limit %s%n", port, port, port, medianMicros / 1000, sigma, errorRate * 100, throttleRate * 100,
+            rateLimit > 0 ? rateLimit + "/s" : "off");
+        if (!reportInterval.isZero()) {
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stand-in-report");
+                thread.setDaemon(true);
+                return thread;
+            }).scheduleAtFixedRate(this::report, reportInterval.toMillis(), reportInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        int status = 500;
+        try {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (path.equals("/api/token") && method.equals("POST")) {
+                sleep();
+                status = token(exchange, new String(body, StandardCharsets.UTF_8));
+                return;
+            }
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            if (auth == null || !auth.startsWith("Bearer ")) {
+                status = error(exchange, 401, "No token provided");
+                return;
+            }
+            String userId = userOf(auth.substring("Bearer ".length()));
+            sleep();
+            status = injectedFailure(exchange);
+            if (status == 0) {
+                status = route(exchange, method, path, userId, body);
+            }
+        } catch (RuntimeException e) {
+            status = error(exchange, 400, String.valueOf(e.getMessage()).replace('"', '\'')); // e.g. limit=abc
+        } finally {
+            counts.computeIfAbsent(method + " " + template(path) + " " + status, key -> new LongAdder()).increment();
+            exchange.close();
+        }
+    }
+
+    private int route(HttpExchange exchange, String method, String path, String userId, byte[] body) throws IOException {
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        if (method.equals("GET") && path.equals("/v1/me")) {
+            return json(exchange, 200, new String(profileTemplate, StandardCharsets.UTF_8).replace("USER_ID", userId));
+        }
+        if (method.equals("GET") && path.equals("/v1/me/top/tracks")) {
+            return json(exchange, 200, topItems(trackPages, userId, query, topTracksTotal, path));
+        }
+        if (method.equals("GET") && path.equals("/v1/me/top/artists")) {
+            return json(exchange, 200, topItems(artistPages, userId, query, PAGE_SIZE, path));
+        }
+        if (method.equals("GET") && path.equals("/v1/artists")) {
+            String[] ids = query.getOrDefault("ids", "").split(",");
+            if (ids.length > 50) {
+                return error(exchange, 400, "Too many ids requested");
+            }
+            StringBuilder artists = new StringBuilder("{\"artists\":[");
+            for (int i = 0; i < ids.length; i++) {
+                int pooled = Math.floorMod(ids[i].hashCode(), artistIds.size());
+                artists.append(i > 0 ? "," : "").append(artistJson.get(pooled).replace(artistIds.get(pooled), ids[i]));
+            }
+            return json(exchange, 200, artists.append("]}").toString());
+        }
+        if (method.equals("POST") && path.matches("/v1/users/[^/]+/playlists")) {
+            String id = "pl" + Long.toString(tokenCounter.incrementAndGet(), 36) + "x".repeat(12);
+            return json(exchange, 201, "{\"id\":\"" + id + "\",\"uri\":\"spotify:playlist:" + id + "\",\"type\":\"playlist\","
+                + "\"external_urls\":{\"spotify\":\"https://open.spotify.com/playlist/" + id + "\"},"
+                + "\"owner\":{\"id\":\"" + userId + "\"},\"tracks\":{\"total\":0}}");
+        }
+        if (method.equals("POST") && path.matches("/v1/playlists/[^/]+/tracks")) {
+            int uris = new String(body, StandardCharsets.UTF_8).split("spotify:track:", -1).length - 1;
+            if (uris > 100) {
+                return error(exchange, 400, "You can add a maximum of 100 tracks per request.");
+            }
+            return json(exchange, 201, "{\"snapshot_id\":\"" + Long.toString(System.nanoTime(), 36) + "\"}");
+        }
+        return error(exchange, 404, "Service not found");
+    }
+
+    // items #offset.. of this user's top list for the range, page k of it comes from pool variant (first + k)
+    private byte[] topItems(List<List<byte[]>> pool, String userId, Map<String, String> query, int total, String path) {
+        int limit = Math.min(PAGE_SIZE, Integer.parseInt(query.getOrDefault("limit", "20")));
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        int first = Math.floorMod((userId + query.getOrDefault("time_range", "medium_term")).hashCode(), pool.size());
+        List<byte[]> items = new ArrayList<>(limit);
+        for (int i = offset; i < Math.min(offset + limit, total); i++) {
+            items.add(pool.get((first + i / PAGE_SIZE) % pool.size()).get(i % PAGE_SIZE));
+        }
+        return SpotifyPayloads.page(items, total, limit, offset, "https://api.spotify.com" + path);
+    }
+
+    private int token(HttpExchange exchange, String form) throws IOException {
+        Map<String, String> params = query(form);
+        String userId;
+        if ("authorization_code".equals(params.get("grant_type")) && params.get("code") != null) {
+            userId = params.get("code").replaceAll("[^A-Za-z0-9_-]", "");
+        } else if ("refresh_token".equals(params.get("grant_type")) && params.getOrDefault("refresh_token", "").startsWith("refresh.")) {
+            userId = params.get("refresh_token").substring("refresh.".length());
+        } else {
+            String body = "{\"error\":\"invalid_grant\",\"error_description\":\"Invalid authorization code\"}";
+            return send(exchange, 400, body.getBytes(StandardCharsets.UTF_8));
+        }
+        String accessToken = "standin." + userId + "." + Long.toString(tokenCounter.incrementAndGet(), 36);
+        return json(exchange, 200, "{\"access_token\":\"" + accessToken + "\",\"token_type\":\"Bearer\",\"expires_in\":"
+            + tokenLifetimeSeconds + ",\"refresh_token\":\"refresh." + userId + "\",\"scope\":\"user-read-private "
+            + "user-read-email user-top-read playlist-modify-public playlist-modify-private\"}");
+    }
+
+    // 0 if the call goes through, otherwise the status we answered with
+    private int injectedFailure(HttpExchange exchange) throws IOException {
+        if (rateLimit > 0) {
+            long second = System.currentTimeMillis() / 1000;
+            long current = windowSecond.get();
+            if (current != second && windowSecond.compareAndSet(current, second)) {
+                windowCalls.set(0);
+            }
+            if (windowCalls.incrementAndGet() > rateLimit) {
+                return tooManyRequests(exchange);
+            }
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+            return tooManyRequests(exchange);
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            int[] statuses = {500, 502, 503};
+            return error(exchange, statuses[random.nextInt(statuses.length)], "Server error");
+        }
+        return 0;
+    }
+
+    private int tooManyRequests(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        return error(exchange, 429, "API rate limit exceeded");
+    }
+
+    private void sleep() {
+        double gaussian = sigma > 0 ? ThreadLocalRandom.current().nextGaussian() : 0;
+        long micros = (long) (medianMicros * Math.exp(sigma * gaussian));
+        if (micros > 0) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(micros);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String userOf(String accessToken) {
+        if (accessToken.startsWith("standin.")) {
+            int end = accessToken.lastIndexOf('.');
+            if (end > "standin.".length()) {
+                return accessToken.substring("standin.".length(), end);
+            }
+        }
+        return "user" + Integer.toHexString(accessToken.hashCode()); // someone else's token, still a stable user
+    }
+
+    // "/v1/users/abc/playlists" -> "/v1/users/{id}/playlists", so the counts group by endpoint
+    private static String template(String path) {
+        return path.replaceAll("^/v1/(users|playlists)/[^/]+", "/v1/$1/{id}");
+    }
+
+    private static Map<String, String> query(String query) {
+        Map<String, String> params = new TreeMap<>();
+        if (query != null && !query.isEmpty()) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return params;
+    }
+
+    // Spotify's error shape: {"error": {"status": 429, "message": "..."}}
+    private static int error(HttpExchange exchange, int status, String message) throws IOException {
+        return json(exchange, status, "{\"error\":{\"status\":" + status + ",\"message\":\"" + message + "\"}}");
+    }
+
+    private static int json(HttpExchange exchange, int status, String body) throws IOException {
+        return json(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int json(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        return send(exchange, status, body);
+    }
+
+    private static int send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+        return status;
+    }
+
+    private void report() {
+        long total = 0;
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counts).entrySet()) {
+            long calls = entry.getValue().sumThenReset();
+            if (calls > 0) {
+                total += calls;
+                line.append(String.format("%n  %-45s %8d", entry.getKey(), calls));
+            }
+        }
+        System.out.printf("%d calls in the last %ds (%.1f/s)%s%n", total, reportInterval.toSeconds(),
+            total * 1000.0 / reportInterval.toMillis(), line);
+    }
+}
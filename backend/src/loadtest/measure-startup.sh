@@ -0,0 +1,38 @@
+#!/usr/bin/env bash
+# Time to first request and memory of one way of starting the backend, averaged over a few cold starts
+# needs the Spotify stand-in running (mvn -P loadtest test-compile exec:exec@standin), the first request is a real
+# /api/spotify/me that goes through the controller, the service and the HTTP client to it
+# usage: src/loadtest/measure-startup.sh <label> <runs> <java command...>
+#   src/loadtest/measure-startup.sh standard 5 java -jar target/dashboard-0.0.1-SNAPSHOT.jar --spring.profiles.active=loadtest
+set -euo pipefail
+
+label=$1
+runs=$2
+shift 2
+url="http://localhost:8080/api/spotify/me"
+
+printf '%-14s %5s %14s %14s %12s %12s\n' run "" "started (s)" "first req (s)" "RSS (MB)" "RSS +10s (MB)"
+for run in $(seq 1 "$runs"); do
+  log=$(mktemp)
+  start=$(date +%s%N)
+  "$@" > "$log" 2>&1 &
+  pid=$!
+  until [ "$(curl -s -o /dev/null -w '%{http_code}' -H 'Authorization: Bearer standin.startup.1' "$url" || true)" = 200 ]; do
+    if ! kill -0 "$pid" 2> /dev/null; then
+      echo "backend exited, see $log" >&2
+      exit 1
+    fi
+    sleep 0.01
+  done
+  first=$(( ($(date +%s%N) - start) / 1000000 ))
+  rss=$(awk '/VmRSS/ {print int($2 / 1024)}' "/proc/$pid/status")
+  # what it settles at once the lazy beans, JIT and GC have caught up, after a few more requests
+  for i in $(seq 1 50); do curl -s -o /dev/null -H 'Authorization: Bearer standin.startup.1' "$url"; done
+  sleep 10
+  settled=$(awk '/VmRSS/ {print int($2 / 1024)}' "/proc/$pid/status")
+  started=$(grep -o 'Started BackendApplication in [0-9.]*' "$log" | awk '{print $4}')
+  kill "$pid"
+  wait "$pid" 2> /dev/null || true
+  rm -f "$log"
+  printf '%-14s %5s %14s %14s %12s %12s\n' "$label" "#$run" "$started" "$(awk -v ms="$first" 'BEGIN {printf "%.2f", ms / 1000}')" "$rss" "$settled"
+done
@@ -1,21 +1,200 @@
 package com.spotify.dashboard.config;
 
-import org.springframework.context.annotation.Bean; 
+import java.net.http.HttpClient;
+import java.util.concurrent.Executor;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 
-@Configuration // tells Spring Boot that this class contains configuration methods, 
+import com.spotify.dashboard.service.SnapshotStore;
+import com.spotify.dashboard.service.SpotifyClientMetrics;
+
+@Configuration // tells Spring Boot that this class contains configuration methods,
 // so it'll scan for the annotation when the app first starts
+@EnableConfigurationProperties({SpotifyHttpProperties.class, SpotifyCacheProperties.class, SpotifyRateLimitProperties.class,
+    SpotifyResilienceProperties.class, SpotifyTokenProperties.class, SpotifyHistoryProperties.class})
+// binds spotify.http.*, spotify.cache.*, spotify.rate-limit.*, spotify.resilience.*, spotify.tokens.* and spotify.history.* from application.yml
+@EnableScheduling // for the @Scheduled jobs in SpotifyTokenStore (token refresh) and ListeningHistory (snapshots)
 public class AppConfig {
 
+    // The connection pool, so instead of opening a new TCP + TLS connection to Spotify for every call,
+    // we keep a bunch of them open and hand them out to whoever needs one (and take them back afterwards)
+    // It's its own bean so we can read the pool stats (leased, idle, pending) from the diagnostics endpoint
+    @Bean
+    public PoolingHttpClientConnectionManager spotifyConnectionManager(SpotifyHttpProperties props) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(props.getMaxConnectionsTotal())
+            .setMaxConnPerRoute(props.getMaxConnectionsPerRoute()) // a "route" is basically one host, like api.spotify.com
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(props.getConnectTimeout()))
+                .setSocketTimeout(Timeout.of(props.getReadTimeout()))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(5)) // double check stale connections before reusing them
+                .build())
+            .build();
+    }
+
+    // Apache HttpClient sitting on top of the pool, it's the thing that actually sends the bytes
+    @Bean
+    public CloseableHttpClient spotifyHttpClient(PoolingHttpClientConnectionManager spotifyConnectionManager, SpotifyHttpProperties props) {
+        return HttpClients.custom()
+            .setConnectionManager(spotifyConnectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(props.getPoolAcquireTimeout())) // waiting for a free connection from the pool
+                .setResponseTimeout(Timeout.of(props.getReadTimeout()))
+                .setConnectionKeepAlive(TimeValue.of(props.getKeepAlive())) // used when Spotify doesn't tell us its own keep-alive
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.of(props.getIdleEviction()))
+            .build();
+    }
+
+    // Same idea as the pool above, but for the non-blocking client SpotifyApiService uses
+    // with http2-enabled the client offers HTTP/2 during the TLS handshake and falls back to HTTP/1.1 if the server says no
+    @Bean
+    public PoolingAsyncClientConnectionManager spotifyAsyncConnectionManager(SpotifyHttpProperties props) {
+        return PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(props.getMaxConnectionsTotal())
+            .setMaxConnPerRoute(props.getMaxConnectionsPerRoute())
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(props.getConnectTimeout()))
+                .setSocketTimeout(Timeout.of(props.getReadTimeout()))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(5))
+                .build())
+            .setDefaultTlsConfig(TlsConfig.custom()
+                .setVersionPolicy(props.isHttp2Enabled() ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                .build())
+            .build();
+    }
+
+    // Non-blocking HTTP client, a couple of I/O threads juggle all the open connections
+    // so nobody sits on a thread waiting for Spotify to answer (we get a callback when it does)
+    @Bean
+    public CloseableHttpAsyncClient spotifyAsyncHttpClient(PoolingAsyncClientConnectionManager spotifyAsyncConnectionManager, SpotifyHttpProperties props) {
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+            .setConnectionManager(spotifyAsyncConnectionManager)
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setSoTimeout(Timeout.of(props.getReadTimeout()))
+                .build())
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(props.getPoolAcquireTimeout()))
+                .setResponseTimeout(Timeout.of(props.getReadTimeout()))
+                .setConnectionKeepAlive(TimeValue.of(props.getKeepAlive()))
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.of(props.getIdleEviction()))
+            .build();
+        client.start(); // spins up the I/O threads, closed again when Spring shuts down
+        return client;
+    }
+
+    // Every outbound call (RestTemplate interceptor + SpotifyApiService's async calls) goes through this, so we never
+    // have more than spotify.http.max-concurrent-requests open against Spotify (matters most in virtual thread mode)
+    @Bean
+    public OutboundConcurrencyLimiter outboundConcurrencyLimiter(SpotifyHttpProperties props) {
+        return new OutboundConcurrencyLimiter(props.getMaxConcurrentRequests(), props.getPoolAcquireTimeout().toMillis());
+    }
+
     @Bean // With Bean you basically create something once, and it can be used multiple times
     // so in this case, we create RestTemplate once and can use it for all the Spotify API calls in the future
     // sort of like how there's one book from the library, and but many people can borrow it
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(CloseableHttpClient spotifyHttpClient, SpotifyHttpProperties props,
+                                     OutboundConcurrencyLimiter outboundConcurrencyLimiter) {
+        RestTemplate restTemplate = createRestTemplate(spotifyHttpClient, props);
+        restTemplate.getInterceptors().add(outboundConcurrencyLimiter);
+        return restTemplate;
+    }
+
+    private RestTemplate createRestTemplate(CloseableHttpClient spotifyHttpClient, SpotifyHttpProperties props) {
+        if (props.isHttp2Enabled()) {
+            // Apache's classic (blocking) client only speaks HTTP/1.1, so for HTTP/2 we use the JDK client instead
+            // it multiplexes requests over one connection per host, but it manages that connection itself (so no pool stats)
+            HttpClient jdkClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(props.getConnectTimeout())
+                .build();
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(jdkClient);
+            factory.setReadTimeout(props.getReadTimeout());
+            return new RestTemplate(factory);
+        }
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(spotifyHttpClient));
+    }
+
+    // Threads that pick up Spotify responses once they arrive (JSON decoding + whatever we chain on after)
+    // so the async client's I/O threads go straight back to moving bytes
+    // sized to the per-route connection limit, since that's the most responses we can have arriving at once
+    @Bean
+    @ConditionalOnThreading(Threading.PLATFORM) // the default, see spotifyVirtualExecutor for the other mode
+    public Executor spotifyExecutor(SpotifyHttpProperties props) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(props.getMaxConnectionsPerRoute());
+        executor.setMaxPoolSize(props.getMaxConnectionsPerRoute());
+        executor.setQueueCapacity(1000); // extra work waits here instead of spinning up more threads
+        executor.setThreadNamePrefix("spotify-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Virtual thread mode (Java 21+ with spring.threads.virtual.enabled=true, see application-virtual-threads.yml)
+    // every response gets handled on its own cheap virtual thread, so there's no pool to run out of,
+    // how much we send upstream at once is capped by the OutboundConcurrencyLimiter instead
+    @Bean(name = "spotifyExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor spotifyVirtualExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("spotify-vt-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
+    // Token refreshes (SpotifyTokenStore) are blocking RestTemplate calls, so they get a couple of threads of their own
+    // instead of tying up the ones decoding Spotify responses. There's only ever a handful due at once
+    @Bean
+    public Executor tokenRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("spotify-token-");
+        executor.initialize();
+        return executor;
+    }
+
+    // With lazy initialization on (application-fast-startup.yml) most beans are only built on their first request,
+    // these still get built at startup:
+    // - SnapshotStore opens and checks the history files, a bad disk should fail the deploy, not someone's login
+    // - SpotifyClientMetrics registers the Spotify gauges, so /actuator/prometheus has them before the first call
+    // the scheduled jobs (token refresh, snapshots) can be lazy: they only have work once someone logged in,
+    // and logging in builds them
+    @Bean
+    public static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SnapshotStore.class, SpotifyClientMetrics.class);
     }
 }
 
 // RestTemplate is Spring's HTTP client, so it makes API calls to other services
-// basically handles the complex HTTP comms by converting the JSON from said API calls 
+// basically handles the complex HTTP comms by converting the JSON from said API calls
 // and converts them to Java maps, then returns the data to our code
\ No newline at end of file
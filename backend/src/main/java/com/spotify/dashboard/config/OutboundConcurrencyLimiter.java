@@ -0,0 +1,147 @@
+package com.spotify.dashboard.config;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import com.spotify.dashboard.service.SpotifyApiException;
+
+// Caps how many requests we have open against Spotify at once, no matter how many threads want to send one
+// with platform threads the Tomcat pool already kind of does this, but with virtual threads there's
+// basically no limit on threads, so without this a traffic spike would turn straight into a flood upstream
+public class OutboundConcurrencyLimiter implements ClientHttpRequestInterceptor {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long acquireTimeoutMillis;
+    // blocking and async calls waiting for a permit, in one line so neither kind can keep cutting in front of the other
+    private final ConcurrentLinkedQueue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+
+    public OutboundConcurrencyLimiter(int maxConcurrent, long acquireTimeoutMillis) {
+        this.permits = new Semaphore(maxConcurrent); // nobody blocks on it, waiting happens in waiters, oldest first
+        this.maxConcurrent = maxConcurrent;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        acquire();
+        try {
+            // the permit covers sending the request and waiting for Spotify to answer (the slow part),
+            // reading the body afterwards happens on the pooled connection, which the pool limits anyway
+            return execution.execute(request, body);
+        } finally {
+            permits.release();
+            startWaiters();
+        }
+    }
+
+    // Waits in the same queue as the async calls. Waiting on the semaphore itself used to starve the token exchange
+    // under load: every async call that found a permit free took it, while the blocking caller sat out its timeout
+    private void acquire() throws IOException {
+        if (waiters.isEmpty() && permits.tryAcquire()) {
+            return;
+        }
+        CompletableFuture<Void> granted = new CompletableFuture<>();
+        Runnable waiter = () -> granted.complete(null); // runs once startWaiters took a permit for us
+        waiters.add(waiter);
+        startWaiters(); // a permit might have freed up while we were queueing
+        try {
+            granted.get(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (waiters.remove(waiter)) {
+                throw new IOException("Too many concurrent Spotify requests, gave up after " + acquireTimeoutMillis + "ms");
+            }
+            granted.join(); // got the permit just as we gave up, it's being handed over right now
+        } catch (InterruptedException e) {
+            if (!waiters.remove(waiter)) {
+                granted.join(); // we own a permit by now, pass it on
+                permits.release();
+                startWaiters();
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to call Spotify", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e); // never completed exceptionally
+        }
+    }
+
+    // Non-blocking version for the async client: if there's a free permit the call starts right away,
+    // otherwise it's parked in a queue (no thread waits) and started as soon as another call finishes
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        if (waiters.isEmpty() && permits.tryAcquire()) { // nobody's queued ahead of us
+            return runWithPermit(call);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable starter = () -> runWithPermit(call).whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        waiters.add(starter);
+
+        // same acquire timeout as the blocking path, if we're still in the queue by then we give up
+        // as a local overload, so the scheduler retries it, the circuit breakers ignore it and the controller answers 503
+        CompletableFuture.delayedExecutor(acquireTimeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (waiters.remove(starter)) {
+                result.completeExceptionally(SpotifyApiException.overloaded("Too many concurrent Spotify requests, gave up after " + acquireTimeoutMillis + "ms"));
+            }
+        });
+        startWaiters(); // a permit might have freed up while we were queueing
+        return result;
+    }
+
+    private <T> CompletableFuture<T> runWithPermit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((value, error) -> {
+            permits.release();
+            startWaiters();
+        });
+    }
+
+    // Hands free permits to queued calls, oldest first
+    private void startWaiters() {
+        while (!waiters.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiters.poll();
+            if (next == null) { // someone else grabbed it first, give the permit back
+                permits.release();
+                return;
+            }
+            next.run();
+        }
+    }
+
+    public int inUse() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int available() {
+        return permits.availablePermits();
+    }
+
+    public int waiting() {
+        return waiters.size();
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+}
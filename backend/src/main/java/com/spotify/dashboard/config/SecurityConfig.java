@@ -4,6 +4,7 @@ import java.util.Arrays;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity; // well yeah that's the name duh
 import org.springframework.security.web.SecurityFilterChain; // All requests have to go through this chain (and all the filters within it)
@@ -20,10 +21,15 @@ public class SecurityConfig {
         http // filters are below (within the security chain)
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .csrf(csrf -> csrf.disable()) // filter 1: disables csrf protection (Cross-Site Request Forgery)
+            // Security's default "Cache-Control: no-store" stays on, it's only written when the controller didn't set one
+            // so the max-age our GET endpoints send (see JsonResponseCache) wins and everything else isn't stored
             .authorizeHttpRequests(authz -> authz // filter 2: sets up auth rules for HTTP reqs and defines who can access what
                 .requestMatchers("/api/**").permitAll() // allows API access without authentication required, like the tracks, artists, etc
+                .requestMatchers("/actuator/health").permitAll() // for the load balancer
+                .requestMatchers("/actuator/prometheus", "/actuator/metrics/**").hasRole("METRICS") // the scraper logs in as spring.security.user (see application.yml)
                 .anyRequest().authenticated() // requires authentication for all other endpoints (like /dashboard, /admin, etc)
-            );
+            )
+            .httpBasic(Customizer.withDefaults()); // only the scraper uses it, the API itself is cookie/bearer based
         return http.build(); // builds and returns the actual SecurityFilterChain config for the Spring Security to use
     }
 
@@ -0,0 +1,34 @@
+package com.spotify.dashboard.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Binds everything under "spotify.cache" in application.yml
+// top tracks/artists and the user profile barely change during the day, so we keep them around for a while
+@ConfigurationProperties(prefix = "spotify.cache")
+public class SpotifyCacheProperties {
+
+    private boolean enabled = true;
+    private Duration profileTtl = Duration.ofMinutes(30); // /me
+    private Duration topItemsTtl = Duration.ofMinutes(15); // /me/top/tracks and /me/top/artists
+    private Duration staleTtl = Duration.ofHours(6); // past its TTL a response is still served (while refreshing) for this long
+    private long maximumWeight = 50_000; // roughly "number of cached items", a 50 track response weighs 51
+    private Duration artistTtl = Duration.ofHours(24); // artist metadata (genres, images, ...), shared by all users
+    private long artistMaximumSize = 100_000; // max number of artists kept, ~1-2 KB each
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public Duration getProfileTtl() { return profileTtl; }
+    public void setProfileTtl(Duration profileTtl) { this.profileTtl = profileTtl; }
+    public Duration getTopItemsTtl() { return topItemsTtl; }
+    public void setTopItemsTtl(Duration topItemsTtl) { this.topItemsTtl = topItemsTtl; }
+    public Duration getStaleTtl() { return staleTtl; }
+    public void setStaleTtl(Duration staleTtl) { this.staleTtl = staleTtl; }
+    public long getMaximumWeight() { return maximumWeight; }
+    public void setMaximumWeight(long maximumWeight) { this.maximumWeight = maximumWeight; }
+    public Duration getArtistTtl() { return artistTtl; }
+    public void setArtistTtl(Duration artistTtl) { this.artistTtl = artistTtl; }
+    public long getArtistMaximumSize() { return artistMaximumSize; }
+    public void setArtistMaximumSize(long artistMaximumSize) { this.artistMaximumSize = artistMaximumSize; }
+}
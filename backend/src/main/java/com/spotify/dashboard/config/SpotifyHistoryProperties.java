@@ -0,0 +1,25 @@
+package com.spotify.dashboard.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Binds everything under "spotify.history" in application.yml, see ListeningHistory / SnapshotStore
+// Spotify only ever shows the current top 50, so we keep our own snapshots of it to see how it changes over time
+@ConfigurationProperties(prefix = "spotify.history")
+public class SpotifyHistoryProperties {
+
+    private boolean enabled = true;
+    private String directory = "data/history"; // where the snapshot files live, relative to the working directory
+    private Duration snapshotInterval = Duration.ofDays(1); // at most one snapshot per user, list and time range this often
+    private Duration checkInterval = Duration.ofHours(1); // how often we look for logged in users that are due one
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public String getDirectory() { return directory; }
+    public void setDirectory(String directory) { this.directory = directory; }
+    public Duration getSnapshotInterval() { return snapshotInterval; }
+    public void setSnapshotInterval(Duration snapshotInterval) { this.snapshotInterval = snapshotInterval; }
+    public Duration getCheckInterval() { return checkInterval; }
+    public void setCheckInterval(Duration checkInterval) { this.checkInterval = checkInterval; }
+}
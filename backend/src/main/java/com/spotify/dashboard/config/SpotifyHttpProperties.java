@@ -0,0 +1,40 @@
+package com.spotify.dashboard.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Binds everything under "spotify.http" in application.yml
+// these are the knobs for the outbound HTTP client that talks to api.spotify.com and accounts.spotify.com
+@ConfigurationProperties(prefix = "spotify.http")
+public class SpotifyHttpProperties {
+
+    private Duration connectTimeout = Duration.ofSeconds(2); // how long we wait for the TCP + TLS handshake
+    private Duration readTimeout = Duration.ofSeconds(10); // how long we wait for Spotify to answer once the request is sent
+    private Duration poolAcquireTimeout = Duration.ofSeconds(2); // how long a request waits for a free pooled connection
+    private int maxConnectionsTotal = 200; // upper bound of open connections across all hosts
+    private int maxConnectionsPerRoute = 50; // upper bound per host (api.spotify.com, accounts.spotify.com)
+    private Duration keepAlive = Duration.ofSeconds(30); // how long an idle connection is kept when Spotify doesn't send a Keep-Alive header
+    private Duration idleEviction = Duration.ofSeconds(60); // idle connections older than this are closed in the background
+    private boolean http2Enabled = false; // switches the RestTemplate over to the JDK client, which negotiates HTTP/2
+    private int maxConcurrentRequests = 100; // hard cap on requests in flight to Spotify (see OutboundConcurrencyLimiter)
+
+    public Duration getConnectTimeout() { return connectTimeout; }
+    public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+    public Duration getReadTimeout() { return readTimeout; }
+    public void setReadTimeout(Duration readTimeout) { this.readTimeout = readTimeout; }
+    public Duration getPoolAcquireTimeout() { return poolAcquireTimeout; }
+    public void setPoolAcquireTimeout(Duration poolAcquireTimeout) { this.poolAcquireTimeout = poolAcquireTimeout; }
+    public int getMaxConnectionsTotal() { return maxConnectionsTotal; }
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) { this.maxConnectionsTotal = maxConnectionsTotal; }
+    public int getMaxConnectionsPerRoute() { return maxConnectionsPerRoute; }
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) { this.maxConnectionsPerRoute = maxConnectionsPerRoute; }
+    public Duration getKeepAlive() { return keepAlive; }
+    public void setKeepAlive(Duration keepAlive) { this.keepAlive = keepAlive; }
+    public Duration getIdleEviction() { return idleEviction; }
+    public void setIdleEviction(Duration idleEviction) { this.idleEviction = idleEviction; }
+    public boolean isHttp2Enabled() { return http2Enabled; }
+    public void setHttp2Enabled(boolean http2Enabled) { this.http2Enabled = http2Enabled; }
+    public int getMaxConcurrentRequests() { return maxConcurrentRequests; }
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) { this.maxConcurrentRequests = maxConcurrentRequests; }
+}
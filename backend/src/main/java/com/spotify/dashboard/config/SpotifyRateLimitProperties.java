@@ -0,0 +1,34 @@
+package com.spotify.dashboard.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Binds everything under "spotify.rate-limit" in application.yml
+// Spotify's rate limit is per app (not per user), so these are shared by everyone using the backend
+@ConfigurationProperties(prefix = "spotify.rate-limit")
+public class SpotifyRateLimitProperties {
+
+    private double requestsPerSecond = 50; // steady rate we let out to Spotify, set it a bit under our quota
+    private int burst = 100; // how many requests can go out back to back after a quiet period
+    private int maxRetries = 3; // retries after a 429, 5xx or network error (5xx/network only for GETs)
+    private Duration baseBackoff = Duration.ofMillis(200); // first retry waits up to this, doubling each time
+    private Duration maxBackoff = Duration.ofSeconds(5);
+    private Duration maxRetryAfter = Duration.ofSeconds(30); // if Spotify wants us to wait longer than this, we fail right away
+    private Duration queueTimeout = Duration.ofSeconds(10); // how long a request can sit in the queue before we give up
+
+    public double getRequestsPerSecond() { return requestsPerSecond; }
+    public void setRequestsPerSecond(double requestsPerSecond) { this.requestsPerSecond = requestsPerSecond; }
+    public int getBurst() { return burst; }
+    public void setBurst(int burst) { this.burst = burst; }
+    public int getMaxRetries() { return maxRetries; }
+    public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+    public Duration getBaseBackoff() { return baseBackoff; }
+    public void setBaseBackoff(Duration baseBackoff) { this.baseBackoff = baseBackoff; }
+    public Duration getMaxBackoff() { return maxBackoff; }
+    public void setMaxBackoff(Duration maxBackoff) { this.maxBackoff = maxBackoff; }
+    public Duration getMaxRetryAfter() { return maxRetryAfter; }
+    public void setMaxRetryAfter(Duration maxRetryAfter) { this.maxRetryAfter = maxRetryAfter; }
+    public Duration getQueueTimeout() { return queueTimeout; }
+    public void setQueueTimeout(Duration queueTimeout) { this.queueTimeout = queueTimeout; }
+}
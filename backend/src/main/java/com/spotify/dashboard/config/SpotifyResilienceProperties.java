@@ -0,0 +1,34 @@
+package com.spotify.dashboard.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Binds everything under "spotify.resilience" in application.yml
+// circuit breaker (stop calling an endpoint that keeps failing) and hedging (send a backup request when one is slow)
+@ConfigurationProperties(prefix = "spotify.resilience")
+public class SpotifyResilienceProperties {
+
+    private int failureThreshold = 5; // failures in a row (5xx, network errors) before an endpoint's circuit opens
+    private Duration openDuration = Duration.ofSeconds(30); // how long we fail fast before letting one trial call through
+    private boolean hedgingEnabled = true;
+    private double hedgePercentile = 0.95; // a GET slower than this percentile of recent calls gets a backup request
+    private Duration hedgeMinDelay = Duration.ofMillis(50); // never hedge sooner than this, whatever the percentile says
+    private double hedgeMaxRatio = 0.1; // at most this share of requests get hedged, so a slow Spotify doesn't get double the load
+    private int hedgeMinSamples = 20; // calls we need to have seen on an endpoint before we trust its percentile
+
+    public int getFailureThreshold() { return failureThreshold; }
+    public void setFailureThreshold(int failureThreshold) { this.failureThreshold = failureThreshold; }
+    public Duration getOpenDuration() { return openDuration; }
+    public void setOpenDuration(Duration openDuration) { this.openDuration = openDuration; }
+    public boolean isHedgingEnabled() { return hedgingEnabled; }
+    public void setHedgingEnabled(boolean hedgingEnabled) { this.hedgingEnabled = hedgingEnabled; }
+    public double getHedgePercentile() { return hedgePercentile; }
+    public void setHedgePercentile(double hedgePercentile) { this.hedgePercentile = hedgePercentile; }
+    public Duration getHedgeMinDelay() { return hedgeMinDelay; }
+    public void setHedgeMinDelay(Duration hedgeMinDelay) { this.hedgeMinDelay = hedgeMinDelay; }
+    public double getHedgeMaxRatio() { return hedgeMaxRatio; }
+    public void setHedgeMaxRatio(double hedgeMaxRatio) { this.hedgeMaxRatio = hedgeMaxRatio; }
+    public int getHedgeMinSamples() { return hedgeMinSamples; }
+    public void setHedgeMinSamples(int hedgeMinSamples) { this.hedgeMinSamples = hedgeMinSamples; }
+}
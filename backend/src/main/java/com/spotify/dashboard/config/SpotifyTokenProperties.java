@@ -0,0 +1,34 @@
+package com.spotify.dashboard.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Binds everything under "spotify.tokens" in application.yml, see SpotifyTokenStore
+// Spotify access tokens last an hour, we swap them for fresh ones a bit before that so no request ever hits an expired one
+@ConfigurationProperties(prefix = "spotify.tokens")
+public class SpotifyTokenProperties {
+
+    private String tokenUrl = "https://accounts.spotify.com/api/token";
+    private Duration refreshMargin = Duration.ofMinutes(5); // refresh once a token has less than this left
+    private Duration refreshCheckInterval = Duration.ofSeconds(30); // how often we look for tokens that are due
+    private Duration sessionLifetime = Duration.ofDays(7); // every session ends this long after login, used or not
+    private Duration sessionIdleTimeout = Duration.ofDays(1); // sessions nobody used for this long end earlier
+    private boolean cookieSecure = false; // send the session cookie over HTTPS only, turn on anywhere that isn't localhost
+    private boolean prefetchOnLogin = true; // warm the caches with the dashboard data right after login
+
+    public String getTokenUrl() { return tokenUrl; }
+    public void setTokenUrl(String tokenUrl) { this.tokenUrl = tokenUrl; }
+    public Duration getRefreshMargin() { return refreshMargin; }
+    public void setRefreshMargin(Duration refreshMargin) { this.refreshMargin = refreshMargin; }
+    public Duration getRefreshCheckInterval() { return refreshCheckInterval; }
+    public void setRefreshCheckInterval(Duration refreshCheckInterval) { this.refreshCheckInterval = refreshCheckInterval; }
+    public Duration getSessionLifetime() { return sessionLifetime; }
+    public void setSessionLifetime(Duration sessionLifetime) { this.sessionLifetime = sessionLifetime; }
+    public Duration getSessionIdleTimeout() { return sessionIdleTimeout; }
+    public void setSessionIdleTimeout(Duration sessionIdleTimeout) { this.sessionIdleTimeout = sessionIdleTimeout; }
+    public boolean isCookieSecure() { return cookieSecure; }
+    public void setCookieSecure(boolean cookieSecure) { this.cookieSecure = cookieSecure; }
+    public boolean isPrefetchOnLogin() { return prefetchOnLogin; }
+    public void setPrefetchOnLogin(boolean prefetchOnLogin) { this.prefetchOnLogin = prefetchOnLogin; }
+}
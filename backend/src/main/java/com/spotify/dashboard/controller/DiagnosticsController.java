@@ -0,0 +1,182 @@
+package com.spotify.dashboard.controller;
+
+import java.util.Map;
+
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.spotify.dashboard.config.OutboundConcurrencyLimiter;
+import com.spotify.dashboard.service.ArtistCatalog;
+import com.spotify.dashboard.service.EndpointCircuitBreakers;
+import com.spotify.dashboard.service.OutboundScheduler;
+import com.spotify.dashboard.service.RequestCoalescer;
+import com.spotify.dashboard.service.RequestHedger;
+import com.spotify.dashboard.service.RequestPriority;
+import com.spotify.dashboard.service.SnapshotStore;
+import com.spotify.dashboard.service.SpotifyResponseCache;
+import com.spotify.dashboard.service.SpotifyTokenStore;
+
+@RestController // Read-only numbers about the backend itself (not Spotify data), handy for tuning
+@RequestMapping("/api/diagnostics")
+// off unless spotify.diagnostics.enabled=true (DIAGNOSTICS_ENABLED), these numbers aren't for the public
+@ConditionalOnProperty(name = "spotify.diagnostics.enabled", havingValue = "true")
+public class DiagnosticsController {
+
+    private final PoolingHttpClientConnectionManager spotifyConnectionManager;
+    private final PoolingAsyncClientConnectionManager spotifyAsyncConnectionManager;
+    private final SpotifyResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final OutboundConcurrencyLimiter outboundConcurrencyLimiter;
+    private final ArtistCatalog artistCatalog;
+    private final OutboundScheduler outboundScheduler;
+    private final EndpointCircuitBreakers circuitBreakers;
+    private final RequestHedger requestHedger;
+    private final SpotifyTokenStore tokenStore;
+    private final SnapshotStore snapshotStore;
+    private final JsonResponseCache jsonResponses;
+
+    public DiagnosticsController(PoolingHttpClientConnectionManager spotifyConnectionManager,
+                                 PoolingAsyncClientConnectionManager spotifyAsyncConnectionManager, SpotifyResponseCache responseCache,
+                                 RequestCoalescer requestCoalescer, OutboundConcurrencyLimiter outboundConcurrencyLimiter,
+                                 ArtistCatalog artistCatalog, OutboundScheduler outboundScheduler,
+                                 EndpointCircuitBreakers circuitBreakers, RequestHedger requestHedger,
+                                 SpotifyTokenStore tokenStore, SnapshotStore snapshotStore,
+                                 JsonResponseCache jsonResponses) {
+        this.spotifyConnectionManager = spotifyConnectionManager;
+        this.spotifyAsyncConnectionManager = spotifyAsyncConnectionManager;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.outboundConcurrencyLimiter = outboundConcurrencyLimiter;
+        this.artistCatalog = artistCatalog;
+        this.outboundScheduler = outboundScheduler;
+        this.circuitBreakers = circuitBreakers;
+        this.requestHedger = requestHedger;
+        this.tokenStore = tokenStore;
+        this.snapshotStore = snapshotStore;
+        this.jsonResponses = jsonResponses;
+    }
+
+    // Snapshot of the outbound connection pools
+    // leased = in use right now, available = idle and ready for reuse, pending = requests waiting for a connection
+    // if pending keeps going up under load, the pool (or per-route limit) is too small
+    // "api" is the async pool SpotifyApiService uses, "blocking" is the RestTemplate one (token exchange)
+    @GetMapping("/http-pool")
+    public ResponseEntity<Map<String, Object>> getHttpPoolStats() {
+        return ResponseEntity.ok(Map.of(
+            "api", poolStats(spotifyAsyncConnectionManager.getTotalStats(), spotifyAsyncConnectionManager.getRoutes().size()),
+            "blocking", poolStats(spotifyConnectionManager.getTotalStats(), spotifyConnectionManager.getRoutes().size()),
+            "outbound_in_use", outboundConcurrencyLimiter.inUse(), // requests holding a concurrency permit
+            "outbound_waiting", outboundConcurrencyLimiter.waiting(), // requests waiting for one
+            "outbound_max", outboundConcurrencyLimiter.maxConcurrent()
+        ));
+    }
+
+    private static Map<String, Object> poolStats(PoolStats stats, int routes) {
+        return Map.of(
+            "leased", stats.getLeased(),
+            "available", stats.getAvailable(),
+            "pending", stats.getPending(),
+            "max", stats.getMax(),
+            "routes", routes
+        );
+    }
+
+    // Response cache counters, hit rate is the one to watch (higher = fewer calls to Spotify)
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        CacheStats stats = responseCache.stats();
+        return ResponseEntity.ok(Map.of(
+            "size", responseCache.size(),
+            "hits", stats.hitCount(),
+            "misses", stats.missCount(),
+            "hit_rate", Math.round(stats.hitRate() * 10000.0) / 10000.0,
+            "evictions", stats.evictionCount()
+        ));
+    }
+
+    // Server-side sessions and how the proactive token refreshes are going
+    @GetMapping("/tokens")
+    public ResponseEntity<Map<String, Object>> getTokenStats() {
+        return ResponseEntity.ok(tokenStore.stats());
+    }
+
+    // Our own responses: how often the serialized bytes were reused, 304s, gzip
+    @GetMapping("/responses")
+    public ResponseEntity<Map<String, Object>> getResponseCacheStats() {
+        return ResponseEntity.ok(jsonResponses.stats());
+    }
+
+    // Size of the local listening history
+    @GetMapping("/history")
+    public ResponseEntity<Map<String, Object>> getHistoryStats() {
+        return ResponseEntity.ok(Map.of(
+            "users", snapshotStore.userCount(),
+            "snapshots", snapshotStore.recordCount(),
+            "dictionary_size", snapshotStore.dictionarySize(),
+            "bytes_on_disk", snapshotStore.bytesOnDisk()
+        ));
+    }
+
+    // Shared artist cache, avg_batch_size close to 50 means concurrent lookups are being merged well
+    @GetMapping("/artists")
+    public ResponseEntity<Map<String, Object>> getArtistCatalogStats() {
+        CacheStats stats = artistCatalog.stats();
+        long batches = artistCatalog.batchesSent();
+        return ResponseEntity.ok(Map.of(
+            "size", artistCatalog.size(),
+            "hits", stats.hitCount(),
+            "misses", stats.missCount(),
+            "batches", batches,
+            "avg_batch_size", batches == 0 ? 0.0 : Math.round(artistCatalog.idsSent() * 100.0 / batches) / 100.0
+        ));
+    }
+
+    // Outbound scheduler: queue depth per priority, how long calls waited for their turn, retries and 429s
+    // paused_ms > 0 means Spotify told us to back off (Retry-After) and nothing is going out right now
+    @GetMapping("/scheduler")
+    public ResponseEntity<Map<String, Object>> getSchedulerStats() {
+        long dispatched = outboundScheduler.dispatchedCount();
+        return ResponseEntity.ok(Map.of(
+            "queued_interactive", outboundScheduler.queueDepth(RequestPriority.INTERACTIVE),
+            "queued_background", outboundScheduler.queueDepth(RequestPriority.BACKGROUND),
+            "waiting_users", outboundScheduler.waitingUsers(),
+            "dispatched", dispatched,
+            "avg_wait_ms", dispatched == 0 ? 0.0 : Math.round(outboundScheduler.totalWaitNanos() / 1e4 / dispatched) / 100.0,
+            "max_wait_ms", Math.round(outboundScheduler.maxWaitNanos() / 1e4) / 100.0,
+            "retries", outboundScheduler.retryCount(),
+            "rate_limited", outboundScheduler.rateLimitedCount(),
+            "timed_out", outboundScheduler.timedOutCount(),
+            "paused_ms", outboundScheduler.pausedForMillis()
+        ));
+    }
+
+    // Circuit breaker state per endpoint, hedged requests, and how often we served a stale cached response
+    // hedge_wins / hedges = how often the backup request actually beat the slow one
+    @GetMapping("/resilience")
+    public ResponseEntity<Map<String, Object>> getResilienceStats() {
+        return ResponseEntity.ok(Map.of(
+            "circuits", circuitBreakers.states(),
+            "hedges", requestHedger.hedgeCount(),
+            "hedge_wins", requestHedger.hedgeWinCount(),
+            "hedge_thresholds_ms", requestHedger.thresholdsMillis(),
+            "stale_served", responseCache.staleServedCount(),
+            "stale_refresh_failures", responseCache.refreshFailureCount()
+        ));
+    }
+
+    // How many upstream GETs were skipped because an identical one was already in flight
+    @GetMapping("/coalescing")
+    public ResponseEntity<Map<String, Object>> getCoalescingStats() {
+        return ResponseEntity.ok(Map.of(
+            "coalesced", requestCoalescer.coalescedCount(),
+            "in_flight", requestCoalescer.inFlightCount()
+        ));
+    }
+}
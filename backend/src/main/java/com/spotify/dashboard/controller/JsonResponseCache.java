@@ -0,0 +1,162 @@
+package com.spotify.dashboard.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+// Turns our GET responses into bytes once and reuses them while the data behind them hasn't changed
+// - "sources" are the objects a response is built from (a Paging from the response cache, a genre report, ...)
+//   as long as we get the exact same instances back, the JSON can't have changed, so no Jackson and no gzip again
+// - ETag is a hash of the JSON, so the browser can ask "still the same?" (If-None-Match) and get an empty 304
+// - gzip is done here once per version and sent as is to clients that accept it (Tomcat leaves responses that
+//   already have a Content-Encoding alone). Brotli would need a native library, gzip gets most of the win for JSON
+// everything is per user (the key includes the token hash), so Cache-Control is private
+@Component
+public class JsonResponseCache {
+
+    private static final int MIN_GZIP_BYTES = 1024; // below this gzip's overhead eats the savings
+    // who's asking is in the session cookie or the Authorization header
+    private static final String VARY = HttpHeaders.COOKIE + ", " + HttpHeaders.AUTHORIZATION + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    private record Entry(Object[] sources, byte[] json, byte[] gzip, String etag) {
+        boolean builtFrom(Object[] current) {
+            if (sources.length != current.length) {
+                return false;
+            }
+            for (int i = 0; i < current.length; i++) {
+                if (sources[i] != current[i]) { // same instance, not just equal
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    // holds on to the source objects too, bounded by the size limit and the expiry
+    private final Cache<String, Entry> entries = Caffeine.newBuilder()
+        .maximumWeight(64L * 1024 * 1024) // ~64 MB of JSON + gzip
+        .weigher((String key, Entry entry) -> entry.json().length + (entry.gzip() != null ? entry.gzip().length : 0))
+        .expireAfterAccess(Duration.ofHours(1))
+        .build();
+
+    private final LongAdder reused = new LongAdder(); // served without serializing again
+    private final LongAdder serialized = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder gzipped = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder(); // by 304s and gzip, vs sending the plain JSON
+
+    public JsonResponseCache(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // key identifies the endpoint + user + params. Pass no sources for responses we can't tell apart by instance,
+    // those still get ETag/304 and gzip, just serialized every time
+    public ResponseEntity<byte[]> respond(HttpHeaders request, String key, Object body, Duration maxAge, Object... sources) {
+        Entry entry = sources.length > 0 ? entries.getIfPresent(key) : null;
+        if (entry != null && entry.builtFrom(sources)) {
+            reused.increment();
+        } else {
+            entry = build(entry, body, sources);
+            serialized.increment();
+            if (sources.length > 0) {
+                entries.put(key, entry);
+            }
+        }
+        return toResponse(request, entry, maxAge);
+    }
+
+    private Entry build(Entry previous, Object body, Object[] sources) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            String etag = "W/\"" + hash(json) + "\""; // weak, since the gzip and plain bytes share it
+            if (previous != null && previous.etag().equals(etag)) {
+                return new Entry(sources, previous.json(), previous.gzip(), etag); // refreshed upstream, same content
+            }
+            return new Entry(sources, json, json.length >= MIN_GZIP_BYTES ? gzip(json) : null, etag);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Couldn't serialize response: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private ResponseEntity<byte[]> toResponse(HttpHeaders request, Entry entry, Duration maxAge) {
+        CacheControl cacheControl = (maxAge.isZero() ? CacheControl.noCache() : CacheControl.maxAge(maxAge)).cachePrivate();
+        if (request.getIfNoneMatch().stream().anyMatch(tag -> tag.equals(entry.etag()) || tag.equals("*")
+            || ("W/" + tag).equals(entry.etag()))) { // some clients drop the W/ when they send it back
+            notModified.increment();
+            bytesSaved.add(entry.json().length);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entry.etag()).cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, VARY).build();
+        }
+        var response = ResponseEntity.ok().eTag(entry.etag()).cacheControl(cacheControl)
+            .header(HttpHeaders.VARY, VARY).contentType(MediaType.APPLICATION_JSON);
+        if (entry.gzip() != null && acceptsGzip(request)) {
+            gzipped.increment();
+            bytesSaved.add(entry.json().length - entry.gzip().length);
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(entry.gzip());
+        }
+        return response.body(entry.json());
+    }
+
+    private static boolean acceptsGzip(HttpHeaders request) {
+        for (String value : request.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                    return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?"); // "gzip;q=0" means no
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory, doesn't happen
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] json) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // for the diagnostics endpoint
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.estimatedSize());
+        stats.put("reused", reused.sum());
+        stats.put("serialized", serialized.sum());
+        stats.put("not_modified", notModified.sum());
+        stats.put("gzipped", gzipped.sum());
+        stats.put("bytes_saved", bytesSaved.sum());
+        return stats;
+    }
+}
@@ -1,12 +1,18 @@
 package com.spotify.dashboard.controller;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -14,9 +20,22 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
 
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+import com.spotify.dashboard.model.UserProfile;
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.config.SpotifyTokenProperties;
+import com.spotify.dashboard.service.GenreAnalyticsEngine;
+import com.spotify.dashboard.service.ListeningHistory;
+import com.spotify.dashboard.service.LoginPrefetcher;
+import com.spotify.dashboard.service.PlaylistBuilder;
+import com.spotify.dashboard.service.SpotifyApiException;
+import com.spotify.dashboard.service.SnapshotStore;
 import com.spotify.dashboard.service.SpotifyApiService;
+import com.spotify.dashboard.service.SpotifyTokenStore;
+import com.spotify.dashboard.service.TokenHashes;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
@@ -29,66 +48,165 @@ import jakarta.validation.constraints.Pattern;
 
 public class SpotifyController {
 
-    private final RestTemplate restTemplate;
-    
     private static final String TIME_RANGE_PATTERN = "^(short_term|medium_term|long_term)$";
     private static final String TIME_RANGE_ERROR = "Invalid time range";
     private static final String DEFAULT_TIME_RANGE = "medium_term";
-    private static final String SPOTIFY_TOKEN_URL = "https://accounts.spotify.com/api/token";
-
-    @Value("${spotify.client-id}")
-    private String clientId;
-    
-    @Value("${spotify.client-secret}")
-    private String clientSecret;
-    
-    @Value("${spotify.redirect-uri}")
-    private String redirectUri;
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String SESSION_COOKIE = "spotify_session";
+    private static final int MAX_HISTORY_DAYS = 3650;
 
     private final SpotifyApiService spotifyApiService;
-
-    public SpotifyController(SpotifyApiService spotifyApiService, RestTemplate restTemplate) {
+    private final GenreAnalyticsEngine genreAnalyticsEngine;
+    private final PlaylistBuilder playlistBuilder;
+    private final SpotifyTokenStore tokenStore;
+    private final LoginPrefetcher loginPrefetcher;
+    private final ListeningHistory listeningHistory;
+    private final JsonResponseCache jsonResponses;
+    private final boolean prefetchOnLogin;
+    private final Duration sessionLifetime;
+    private final boolean cookieSecure;
+    // browsers may keep responses as long as we keep the data behind them (after that they revalidate with the ETag)
+    private final Duration profileMaxAge;
+    private final Duration topItemsMaxAge;
+
+    public SpotifyController(SpotifyApiService spotifyApiService, GenreAnalyticsEngine genreAnalyticsEngine,
+                             PlaylistBuilder playlistBuilder, SpotifyTokenStore tokenStore,
+                             LoginPrefetcher loginPrefetcher, ListeningHistory listeningHistory,
+                             JsonResponseCache jsonResponses, SpotifyTokenProperties tokenProps,
+                             SpotifyCacheProperties cacheProps) {
         this.spotifyApiService = spotifyApiService;
-        this.restTemplate = restTemplate;
+        this.genreAnalyticsEngine = genreAnalyticsEngine;
+        this.playlistBuilder = playlistBuilder;
+        this.tokenStore = tokenStore;
+        this.loginPrefetcher = loginPrefetcher;
+        this.listeningHistory = listeningHistory;
+        this.jsonResponses = jsonResponses;
+        this.profileMaxAge = cacheProps.isEnabled() ? cacheProps.getProfileTtl() : Duration.ZERO;
+        this.topItemsMaxAge = cacheProps.isEnabled() ? cacheProps.getTopItemsTtl() : Duration.ZERO;
+        this.prefetchOnLogin = tokenProps.isPrefetchOnLogin();
+        this.sessionLifetime = tokenProps.getSessionLifetime();
+        this.cookieSecure = tokenProps.isCookieSecure();
     }
 
     // if it's in "Bearer hi123" format, it'll only give us the token (hi123)
+    // the scheme is case-insensitive ("bearer hi123" is fine too), anything else is rejected instead of sent on to Spotify
     private String extractAccessToken(String authHeader) {
-        return authHeader.replace("Bearer ", "");
+        String header = authHeader.trim();
+        if (!header.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            throw new IllegalArgumentException("Authorization header must be a Bearer token");
+        }
+        String token = header.substring(BEARER_PREFIX.length()).trim();
+        if (token.isEmpty()) {
+            throw new IllegalArgumentException("Authorization header must be a Bearer token");
+        }
+        return token;
+    }
+
+    // What the request is authenticated with: the session cookie from our login, or else a Bearer token
+    // (an API client with its own Spotify token). A cookie for a session that's over (logged out, expired) is a 401,
+    // so the frontend sends the user to log in again
+    private String credentials(String sessionId, String authHeader) {
+        if (sessionId != null && tokenStore.isActive(sessionId)) {
+            return sessionId;
+        }
+        if (authHeader != null) {
+            return extractAccessToken(authHeader);
+        }
+        throw new SpotifyApiException(401, sessionId != null ? "Session expired, log in again" : "Not logged in");
+    }
+
+    // HttpOnly so scripts can't read it, SameSite=Lax so other sites can't send it along with their POSTs
+    // maxAge 0 deletes it
+    private ResponseCookie sessionCookie(String value, Duration maxAge) {
+        return ResponseCookie.from(SESSION_COOKIE, value)
+            .httpOnly(true)
+            .secure(cookieSecure)
+            .sameSite("Lax")
+            .path("/api")
+            .maxAge(maxAge)
+            .build();
     }
 
     // Standardizes error responses across all endpoints
     private ResponseEntity<Map<String, Object>> handleError(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(); // Map.of doesn't allow nulls
+        if (e instanceof SpotifyApiException apiError) {
+            // Spotify rate limiting us (still, after retries) -> 429 so the frontend knows to try again later
+            if (apiError.isRateLimited()) {
+                var response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+                if (apiError.getRetryAfterSeconds() >= 0) {
+                    response.header(HttpHeaders.RETRY_AFTER, String.valueOf(apiError.getRetryAfterSeconds()));
+                }
+                return response.body(Map.of("error", message));
+            }
+            // Spotify down / unreachable, or our queue to it timed out -> 503, it's not the request's fault
+            if (apiError.isServerOrNetworkError()) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", message));
+            }
+            // token expired/revoked, missing scope, unknown ID -> pass those on, the frontend sends people to log in again on a 401
+            if (apiError.getStatus() == 401 || apiError.getStatus() == 403 || apiError.getStatus() == 404) {
+                return ResponseEntity.status(apiError.getStatus()).body(Map.of("error", message));
+            }
+        }
         return ResponseEntity.badRequest() // for 400 error status
-            .body(Map.of("error", e.getMessage())); // returns JSON in format of {"error" : "message"}
+            .body(Map.of("error", message)); // returns JSON in format of {"error" : "message"}
+    }
+
+    // endpoint + user + params, so one user's response can never be handed to someone else
+    // (limit is whichever number picks the window: top items count, or days of history)
+    private static String cacheKey(String endpoint, String accessToken, String timeRange, int limit) {
+        return endpoint + " " + TokenHashes.of(accessToken) + " " + timeRange + " " + limit;
+    }
+
+    // Same as handleError but for the async endpoints, where failures show up wrapped in a CompletionException
+    private ResponseEntity<Map<String, Object>> handleAsyncError(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof Exception exception ? handleError(exception) : handleError(new RuntimeException(cause));
+    }
+
+    // Waits for one section of the dashboard, if it failed we record the error under its name instead of failing everything
+    // only called once every section is done, so join() doesn't actually block here
+    private Object sectionResult(String name, CompletableFuture<?> future, Map<String, Object> errors) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            errors.put(name, cause.getMessage());
+            return null;
+        }
     }
 
     @GetMapping("/me")
-    private ResponseEntity<Map<String, Object>> getCurrentUser( 
-        @RequestHeader("Authorization") String authHeader) {
+    private ResponseEntity<?> getCurrentUser( 
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
+        @RequestHeader HttpHeaders requestHeaders) {
             try {
-                String accessToken = extractAccessToken(authHeader); // Only gets the specific token "hi123"
-                Map<String, Object> result = spotifyApiService.getCurrentUser(accessToken); // then call Spotify API w/ that token
-                return ResponseEntity.ok(result); // HTTP 200 success + user data JSON
+                String accessToken = credentials(sessionId, authHeader); // the session ID, or just "hi123" out of "Bearer hi123"
+                UserProfile result = spotifyApiService.getCurrentUser(accessToken); // then call Spotify API w/ that token
+                // HTTP 200 success + user data JSON (or 304 if the browser already has this exact version)
+                return jsonResponses.respond(requestHeaders, "me " + TokenHashes.of(accessToken), result, profileMaxAge, result);
             } catch (Exception e) {
                 return handleError(e); // otherwise it's http 400 error + error JSON
             }   
         }
 
     @GetMapping("/top/tracks")
-    private ResponseEntity<Map<String, Object>> getTopTracks( 
-        @RequestHeader("Authorization") String authHeader,
+    private ResponseEntity<?> getTopTracks( 
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
         @RequestParam(defaultValue = DEFAULT_TIME_RANGE)
         @Pattern(regexp = TIME_RANGE_PATTERN, message = TIME_RANGE_ERROR) // Validates time_range matches regex, returns 400 if invalid
         String time_range, 
         @RequestParam(defaultValue = "50") // Default limit when parameter not provided
         @Min(value = 1, message = "Limit must be at least 1")
         @Max(value = 50, message = "Limit can't exceed 50") // Spotify only provides up to top 50 tracks/artists
-        int limit) {
+        int limit,
+        @RequestHeader HttpHeaders requestHeaders) {
             try {
-                String accessToken = extractAccessToken(authHeader);
-                Map<String, Object> result = spotifyApiService.getTopTracks(accessToken, time_range, limit);
-                return ResponseEntity.ok(result);
+                String accessToken = credentials(sessionId, authHeader);
+                Paging<Track> result = spotifyApiService.getTopTracks(accessToken, time_range, limit);
+                return jsonResponses.respond(requestHeaders, cacheKey("top/tracks", accessToken, time_range, limit), result, topItemsMaxAge, result);
             } catch (Exception e) {
                 return handleError(e);
             }   
@@ -96,130 +214,220 @@ public class SpotifyController {
     
     // Follow same format as before just for artists
     @GetMapping("/top/artists")
-    private ResponseEntity<Map<String, Object>> getTopArtists( 
-        @RequestHeader("Authorization") String authHeader,
+    private ResponseEntity<?> getTopArtists( 
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
         @RequestParam(defaultValue = DEFAULT_TIME_RANGE)
         @Pattern(regexp = TIME_RANGE_PATTERN, message = TIME_RANGE_ERROR)
         String time_range, 
         @RequestParam(defaultValue = "50") 
         @Min(value = 1, message = "Limit must be at least 1") 
         @Max(value = 50, message = "Limit can't exceed 50") 
-        int limit) {
+        int limit,
+        @RequestHeader HttpHeaders requestHeaders) {
             try {
-                String accessToken = extractAccessToken(authHeader);
-                Map<String, Object> result = spotifyApiService.getTopArtists(accessToken, time_range, limit);
-                return ResponseEntity.ok(result);
+                String accessToken = credentials(sessionId, authHeader);
+                Paging<Artist> result = spotifyApiService.getTopArtists(accessToken, time_range, limit);
+                return jsonResponses.respond(requestHeaders, cacheKey("top/artists", accessToken, time_range, limit), result, topItemsMaxAge, result);
             } catch (Exception e) {
                 return handleError(e);
             }   
         }
 
     // Follow same format as before just for artists
+    // async: returning a CompletableFuture hands the request back to Spring, so no servlet thread waits on Spotify
     @PostMapping("/playlists/generate")
-    private ResponseEntity<Map<String, Object>> generatePlaylist( 
-        @RequestHeader("Authorization") String authHeader,
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> generatePlaylist( 
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
         @Valid @RequestBody PlaylistGenerationRequest request) {
             try {
-                String accessToken = extractAccessToken(authHeader);
-
-                // Getting the current user's info first
-                Map<String, Object> user = spotifyApiService.getCurrentUser(accessToken);
-                String userId = (String) user.get("id");
-
-                // Getting user's top tracks based on timeframe chosen
-                Map<String, Object> tracksResponse = spotifyApiService.getTopTracks(accessToken, request.time_range, 50);
-                @SuppressWarnings("unchecked")
-                var tracks = (java.util.List<Map<String, Object>>) tracksResponse.get("items");
-
-                // Edge case if we don't find any tracks lol
-                if (tracks == null || tracks.isEmpty()) {
-                    return ResponseEntity.ok(Map.of(
-                    "message", "No tracks found for the selected time period",
-                    "name", request.name
-                    ));
-                }
+                String accessToken = credentials(sessionId, authHeader);
+
+                // Getting the current user's info and their top tracks (based on template + timeframe chosen) at the same time
+                // more than 50 tracks means several pages of top tracks, those are fetched in parallel too
+                var userFuture = spotifyApiService.getCurrentUserAsync(accessToken);
+                var tracksFuture = playlistBuilder.selectTracks(accessToken, request.template, request.time_range, request.track_count);
+
+                return tracksFuture.thenCompose(tracksUri -> {
+                    // Edge case if we don't find any tracks lol
+                    if (tracksUri.isEmpty()) {
+                        return CompletableFuture.completedFuture(ResponseEntity.ok(Map.<String, Object>of(
+                        "message", "No tracks found for the selected time period",
+                        "name", request.name
+                        )));
+                    }
 
-                // Create playlist 
-                Map<String, Object> playlistData = Map.of(
-                    "name", request.name, 
-                    "description", request.description, 
-                    "public", request.public_playlist 
-                );
-
-                Map<String, Object> playlist = spotifyApiService.createPlaylist(accessToken, userId, playlistData);
-                String playlistId = (String) playlist.get("id");
-
-                // Extract track URIs
-                var tracksUri = tracks.stream()
-                    .map(track -> (String) track.get("uri"))
-                    .collect(java.util.stream.Collectors.toList());
-
-                // Adding tracks to playlist
-                Map<String, Object> tracksData = Map.of("uris", tracksUri);
-                spotifyApiService.addTracksToPlaylist(accessToken, playlistId, tracksData);
-
-                // Success response w/ playlist info when completed
-                return ResponseEntity.ok(Map.of( 
-                "id", playlistId, 
-                "name", playlist.get("name"), 
-                "description", playlist.get("description"), 
-                "tracks_added", tracksUri.size(), 
-                "external_urls", playlist.get("external_urls") // Spotify url
-                ));
+                    // Create playlist (description is optional, and Map.of doesn't allow nulls)
+                    Map<String, Object> playlistData = Map.of(
+                        "name", request.name, 
+                        "description", request.description != null ? request.description : "", 
+                        "public", request.public_playlist 
+                    );
+
+                    return userFuture
+                        .thenCompose(user -> spotifyApiService.createPlaylistAsync(accessToken, user.id(), playlistData))
+                        .thenCompose(playlist -> {
+                            String playlistId = (String) playlist.get("id");
+
+                            // Adding tracks to playlist (100 per call, in order)
+                            return playlistBuilder.addTracks(accessToken, playlistId, tracksUri)
+                                // Success response w/ playlist info when completed
+                                // (LinkedHashMap since Spotify sends a null description when it's empty)
+                                .thenApply(added -> {
+                                    Map<String, Object> result = new LinkedHashMap<>();
+                                    result.put("id", playlistId);
+                                    result.put("name", playlist.get("name"));
+                                    result.put("description", playlist.get("description"));
+                                    result.put("template", request.template);
+                                    result.put("tracks_added", added);
+                                    result.put("external_urls", playlist.get("external_urls")); // Spotify url
+                                    return ResponseEntity.ok(result);
+                                });
+                        });
+                }).exceptionally(this::handleAsyncError);
 
             } catch (Exception e) {
-                return handleError(e);
+                return CompletableFuture.completedFuture(handleError(e));
             }   
 
         }
 
     @GetMapping("/analytics/genres") // Use post instead of get
-    private ResponseEntity<Map<String, Object>> getGenreAnalytics( 
-        @RequestHeader("Authorization") String authHeader,
+    private CompletableFuture<ResponseEntity<?>> getGenreAnalytics( 
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
         @RequestParam(defaultValue = DEFAULT_TIME_RANGE)
         @Pattern(regexp = TIME_RANGE_PATTERN, message = TIME_RANGE_ERROR)
-        String time_range) {
+        String time_range,
+        @RequestParam(defaultValue = GenreAnalyticsEngine.SOURCE_ARTISTS)
+        @Pattern(regexp = "^(artists|tracks)$", message = "Invalid source") // genres of top artists, or of the artists behind top tracks
+        String source,
+        @RequestHeader HttpHeaders requestHeaders) {
             try {
-                String accessToken = extractAccessToken(authHeader);
+                String accessToken = credentials(sessionId, authHeader);
 
-                // Grab user's top artists
-                Map<String, Object> artistsResponse = spotifyApiService.getTopArtists(accessToken, time_range, 50);
-                @SuppressWarnings("unchecked")
-                var artists = (java.util.List<Map<String, Object>>) artistsResponse.get("items");
+                // Top 10 genres from the user's top 50 artists (all three time ranges get worked out and cached together)
+                // "items" is the plain count like before, "weighted" favours genres of higher ranked artists
+                return genreAnalyticsEngine.breakdown(accessToken, time_range, source)
+                    .<ResponseEntity<?>>thenApply(genres -> jsonResponses.respond(requestHeaders,
+                        cacheKey("analytics/genres/" + source, accessToken, time_range, 0),
+                        Map.<String, Object>of("items", genres.items(), "weighted", genres.weighted()), topItemsMaxAge, genres))
+                    .exceptionally(this::handleAsyncError);
 
-                if (artists == null || artists.isEmpty()) { // edge case again if we don't see any artists
-                    return ResponseEntity.ok(Map.of("items", java.util.Collections.emptyList()));
-                }
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(handleError(e));
+            }   
+        }
 
-                // Grab all genres from all the artists the user listens to
-                var genreCount = new java.util.HashMap<String, Integer>();
-                artists.forEach(artist -> {
-                    @SuppressWarnings("unchecked")
-                    var genres = (java.util.List<String>) artist.get("genres");
-                    if (genres != null) {
-                        genres.forEach(genre -> genreCount.merge(genre, 1, Integer::sum)); // Count every time a genre occurs
-                    }
-                });
-
-                // Convert them to a sorted list w/ percentages (for the pie chart)
-                var genreList = genreCount.entrySet().stream()
-                    .sorted((a, b) -> b.getValue().compareTo(a.getValue())) // Sort in descending order (count)
-                    .limit(10) // Their top 10 genres they listen to
-                    .map(entry -> {
-                        int count = entry.getValue();
-                        double percentage = (count * 100.0) / artists.size();
-                        return Map.of(
-                            "name", entry.getKey(), 
-                            "count", count, 
-                            "percentage", Math.round(percentage * 100.0) / 100.0 // Round percentage to 2 decimals
-                        );
-                    }) 
-                    .collect(java.util.stream.Collectors.toList());
-
-                return ResponseEntity.ok(Map.of("items", genreList));
+    // How the user's top tracks or artists moved over the last `days` days, from our own snapshots (no Spotify calls
+    // apart from a cached /me for tokens we don't have a session for)
+    @GetMapping("/history/rank-movement")
+    private CompletableFuture<ResponseEntity<?>> getRankMovement(
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
+        @RequestParam(defaultValue = "tracks")
+        @Pattern(regexp = "^(tracks|artists)$", message = "Invalid kind")
+        String kind,
+        @RequestParam(defaultValue = DEFAULT_TIME_RANGE)
+        @Pattern(regexp = TIME_RANGE_PATTERN, message = TIME_RANGE_ERROR)
+        String time_range,
+        @RequestParam(defaultValue = "90")
+        @Min(value = 1, message = "Days must be at least 1")
+        @Max(value = MAX_HISTORY_DAYS, message = "Days can't exceed 3650")
+        int days,
+        @RequestHeader HttpHeaders requestHeaders) {
+            try {
+                String accessToken = credentials(sessionId, authHeader);
+                SnapshotStore.Kind snapshotKind = kind.equals("artists") ? SnapshotStore.Kind.ARTISTS : SnapshotStore.Kind.TRACKS;
+                Instant to = Instant.now();
+                return listeningHistory.userId(accessToken)
+                    .<ResponseEntity<?>>thenApply(userId -> jsonResponses.respond(requestHeaders,
+                        cacheKey("history/rank-movement " + kind, accessToken, time_range, days), listeningHistory.rankMovement(
+                        userId, snapshotKind, time_range, to.minus(Duration.ofDays(days)), to), Duration.ZERO))
+                    .exceptionally(this::handleAsyncError);
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(handleError(e));
+            }
+        }
 
+    // How the user's genre mix shifted over the last `days` days, biggest movers first
+    @GetMapping("/history/genre-drift")
+    private CompletableFuture<ResponseEntity<?>> getGenreDrift(
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
+        @RequestParam(defaultValue = DEFAULT_TIME_RANGE)
+        @Pattern(regexp = TIME_RANGE_PATTERN, message = TIME_RANGE_ERROR)
+        String time_range,
+        @RequestParam(defaultValue = "90")
+        @Min(value = 1, message = "Days must be at least 1")
+        @Max(value = MAX_HISTORY_DAYS, message = "Days can't exceed 3650")
+        int days,
+        @RequestHeader HttpHeaders requestHeaders) {
+            try {
+                String accessToken = credentials(sessionId, authHeader);
+                Instant to = Instant.now();
+                return listeningHistory.userId(accessToken)
+                    .<ResponseEntity<?>>thenApply(userId -> jsonResponses.respond(requestHeaders,
+                        cacheKey("history/genre-drift", accessToken, time_range, days),
+                        listeningHistory.genreDrift(userId, time_range, to.minus(Duration.ofDays(days)), to), Duration.ZERO))
+                    .exceptionally(this::handleAsyncError);
             } catch (Exception e) {
-                return handleError(e);
+                return CompletableFuture.completedFuture(handleError(e));
+            }
+        }
+
+    // Everything the dashboard needs in one round trip: user, top tracks, top artists and genres
+    // user/tracks/artists are fetched from Spotify at the same time, so this takes about as long as the slowest one
+    // genres are worked out from the artists we already have, so no extra call for those
+    // if one section fails the rest still come back, and the failure shows up under "errors"
+    @GetMapping("/dashboard")
+    private CompletableFuture<ResponseEntity<?>> getDashboard( 
+        @RequestHeader(value = "Authorization", required = false) String authHeader,
+        @CookieValue(name = SESSION_COOKIE, required = false) String sessionId,
+        @RequestParam(defaultValue = DEFAULT_TIME_RANGE)
+        @Pattern(regexp = TIME_RANGE_PATTERN, message = TIME_RANGE_ERROR)
+        String time_range, 
+        @RequestParam(defaultValue = "50") 
+        @Min(value = 1, message = "Limit must be at least 1") 
+        @Max(value = 50, message = "Limit can't exceed 50") 
+        int limit,
+        @RequestHeader HttpHeaders requestHeaders) {
+            try {
+                String accessToken = credentials(sessionId, authHeader);
+
+                // Fire all three at once
+                var userFuture = spotifyApiService.getCurrentUserAsync(accessToken);
+                var tracksFuture = spotifyApiService.getTopTracksAsync(accessToken, time_range, limit);
+                var artistsFuture = spotifyApiService.getTopArtistsAsync(accessToken, time_range, limit);
+
+                // Genres just piggyback on the artists response once it's here
+                var genresFuture = artistsFuture.thenApply(artistsResponse -> genreAnalyticsEngine.summarize(artistsResponse.items()));
+
+                // handle() instead of thenApply() so one failed section doesn't fail the whole thing
+                return CompletableFuture.allOf(userFuture, tracksFuture, artistsFuture, genresFuture)
+                    .<ResponseEntity<?>>handle((ignored, error) -> {
+                        // LinkedHashMap since Map.of doesn't allow nulls (a failed section is null)
+                        Map<String, Object> errors = new LinkedHashMap<>();
+                        Map<String, Object> result = new LinkedHashMap<>();
+                        result.put("user", sectionResult("user", userFuture, errors));
+                        result.put("top_tracks", sectionResult("top_tracks", tracksFuture, errors));
+                        result.put("top_artists", sectionResult("top_artists", artistsFuture, errors));
+                        result.put("genres", sectionResult("genres", genresFuture, errors));
+                        result.put("errors", errors);
+
+                        if (errors.size() == 4) { // nothing worked, so treat it like any other failed endpoint
+                            return ResponseEntity.badRequest().body(Map.<String, Object>of("error", "Dashboard request failed", "errors", errors));
+                        }
+                        // genres are worked out from the artists, so the same user/tracks/artists instances mean the same JSON
+                        // a partial result isn't kept, the next load should try the failed section again
+                        Object[] sources = errors.isEmpty()
+                            ? new Object[] {userFuture.join(), tracksFuture.join(), artistsFuture.join()} : new Object[0];
+                        return jsonResponses.respond(requestHeaders, cacheKey("dashboard", accessToken, time_range, limit), result,
+                            topItemsMaxAge, sources);
+                    });
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(handleError(e));
             }   
         }
 
@@ -232,37 +440,52 @@ public class SpotifyController {
                     return ResponseEntity.badRequest().body(Map.of("error", "No auth code provided"));
                 }
 
-                // Encode client creds for basic auth
-                String credentials = clientId + ":" + clientSecret;
-                String encodedCredentials = java.util.Base64.getEncoder().encodeToString(credentials.getBytes());
-
-                // Headers for token exchange
-                HttpHeaders headers = new HttpHeaders();
-                headers.set("Content-Type", "application/x-www-form-urlencoded"); // form data
-                headers.set("Authorization", "Basic " + encodedCredentials); // basic auth
-
-                // Build form data body
-                String body = "grant_type=authorization_code&code=" + code + "&redirect_uri=" + redirectUri;
-                HttpEntity<String> entity = new HttpEntity<>(body, headers);
-
-                // Exchange the code for tokens
-                @SuppressWarnings("unchecked")
-                ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
-                    SPOTIFY_TOKEN_URL, 
-                    HttpMethod.POST,
-                    entity,
-                    (Class<Map<String, Object>>) (Class<?>) Map.class
-                );
-
-                return ResponseEntity.ok(response.getBody()); // Returns: {access_token, refresh_token, expires_in}
+                // Exchange the code for tokens so the server can keep (and refresh) them, then find out whose they are
+                // /me goes through the new session, so the profile is cached under it and the dashboard's first /me is a hit
+                Map<String, Object> tokens = tokenStore.exchangeCode(code);
+                String sessionId = tokenStore.startSession(tokens);
+                UserProfile user;
+                try {
+                    user = spotifyApiService.getCurrentUser(sessionId);
+                } catch (RuntimeException e) {
+                    tokenStore.endSession(sessionId); // the browser never gets this one
+                    throw e;
+                }
+                tokenStore.identify(sessionId, user.id());
+                if (prefetchOnLogin) {
+                    loginPrefetcher.prefetch(sessionId, DEFAULT_TIME_RANGE); // not waiting for it, the redirect goes back now
+                }
+                listeningHistory.captureIfDue(user.id(), sessionId); // same calls as the prefetch, so they're shared
+
+                // both Spotify tokens stay on the server, the browser only gets the session cookie
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("user_id", user.id());
+                response.put("expires_in", sessionLifetime.toSeconds()); // how long the session lasts at most
+                return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore()) // carries the session cookie, no cache gets to keep it
+                    .header(HttpHeaders.SET_COOKIE, sessionCookie(sessionId, sessionLifetime).toString())
+                    .body(response); // Returns: {user_id, expires_in}
             } catch (Exception e) {
                 return handleError(e);
             }
         }
     
 
+    // Ends the session (its Spotify tokens are forgotten) and clears the cookie, fine to call when already logged out
+    @PostMapping("/auth/logout")
+    public ResponseEntity<Void> logout(@CookieValue(name = SESSION_COOKIE, required = false) String sessionId) {
+        if (sessionId != null) {
+            tokenStore.endSession(sessionId);
+        }
+        return ResponseEntity.noContent()
+            .cacheControl(CacheControl.noStore())
+            .header(HttpHeaders.SET_COOKIE, sessionCookie("", Duration.ZERO).toString())
+            .build();
+    }
+
     public static class PlaylistGenerationRequest {
         @NotBlank(message = "Template is required")  // Must not be empty
+        @Pattern(regexp = PlaylistBuilder.TEMPLATE_PATTERN, message = "Invalid template")  // top-tracks, shuffled or all-time-mix
         public String template;
         
         @NotBlank(message = "Time range is required")
@@ -275,6 +498,10 @@ public class SpotifyController {
         public String description;  // Optional
         public boolean public_playlist;  // Optional, defaults to false
 
+        @Min(value = 1, message = "Track count must be at least 1")
+        @Max(value = PlaylistBuilder.MAX_TRACKS, message = "Track count can't exceed 500")
+        public int track_count = 50;  // Optional, how many tracks to put in the playlist
+
         // Getters and setters for each field
         public String getTemplate() { return template; }
         public void setTemplate(String template) { this.template = template; }
@@ -286,5 +513,7 @@ public class SpotifyController {
         public void setDescription(String description) { this.description = description; }
         public boolean isPublic_playlist() { return public_playlist; }
         public void setPublic_playlist(boolean public_playlist) { this.public_playlist = public_playlist; }
+        public int getTrack_count() { return track_count; }
+        public void setTrack_count(int track_count) { this.track_count = track_count; }
     }
 }
@@ -0,0 +1,10 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Just the album bits the track list shows, the rest (available_markets, release dates, album artists...) is skipped
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record Album(String name, List<SpotifyImage> images) {
+}
@@ -0,0 +1,21 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+// A full artist from /me/top/artists or /artists
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record Artist(
+    String id,
+    String name,
+    String uri,
+    List<String> genres,
+    List<SpotifyImage> images,
+    Followers followers,
+    int popularity,
+    ExternalUrls externalUrls) {
+}
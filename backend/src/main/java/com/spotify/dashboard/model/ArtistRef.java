@@ -0,0 +1,8 @@
+package com.spotify.dashboard.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// The short artist object that comes inside a track (no genres or images, those need an /artists lookup)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ArtistRef(String id, String name) {
+}
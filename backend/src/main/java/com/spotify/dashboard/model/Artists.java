@@ -0,0 +1,10 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Response of /artists?ids=... ({"artists": [...]}), an entry is null when Spotify doesn't know that id
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record Artists(List<Artist> artists) {
+}
@@ -0,0 +1,8 @@
+package com.spotify.dashboard.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Link to the thing on open.spotify.com
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ExternalUrls(String spotify) {
+}
@@ -0,0 +1,8 @@
+package com.spotify.dashboard.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Spotify nests the follower count as {"href": null, "total": 123}, we only keep the total
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record Followers(long total) {
+}
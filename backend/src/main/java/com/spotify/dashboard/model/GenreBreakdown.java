@@ -0,0 +1,10 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+// Top genres for one time range, "items" ranked by plain count (what the pie chart has always shown)
+// and "weighted" ranked by the rank-weighted score
+public record GenreBreakdown(List<GenreStat> items, List<GenreStat> weighted) {
+
+    public static final GenreBreakdown EMPTY = new GenreBreakdown(List.of(), List.of());
+}
@@ -0,0 +1,12 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+// One genre's rank-weighted share (same as GenreStat.weighted_percentage) over a window of snapshots
+// percentages has one entry per snapshot, 0 when it wasn't among the user's genres that day
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record GenreDrift(String name, double firstPercentage, double lastPercentage, double change, List<Double> percentages) {
+}
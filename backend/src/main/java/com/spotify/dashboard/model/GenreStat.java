@@ -0,0 +1,12 @@
+package com.spotify.dashboard.model;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+// One slice of the genre pie chart
+// count = how many of the user's top artists have this genre, percentage = count / number of artists
+// weighted_score = same thing but artists count more the higher they're ranked (#1 of 50 counts 50, #50 counts 1),
+// weighted_percentage = weighted_score / total weight of all artists
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record GenreStat(String name, int count, double percentage, int weightedScore, double weightedPercentage) {
+}
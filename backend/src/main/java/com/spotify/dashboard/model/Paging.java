@@ -0,0 +1,11 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Spotify's paging envelope ({"items": [...], "total": 50, "limit": 50, "offset": 0, "href": ..., "next": ...})
+// the frontend only reads items, total/limit/offset are kept for paging through more results
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record Paging<T>(List<T> items, int total, int limit, int offset) {
+}
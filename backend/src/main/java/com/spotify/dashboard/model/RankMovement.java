@@ -0,0 +1,12 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+// Where one track/artist sits in the newest snapshot vs the oldest one in the window
+// change = previous_rank - rank, so positive means it climbed. ranks has one entry per snapshot, null = not in the top 50
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record RankMovement(String id, String name, Integer rank, Integer previousRank, Integer change, List<Integer> ranks) {
+}
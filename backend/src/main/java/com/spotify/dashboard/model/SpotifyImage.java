@@ -0,0 +1,8 @@
+package com.spotify.dashboard.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// One image (album cover, artist photo, profile pic), we only render the url
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SpotifyImage(String url) {
+}
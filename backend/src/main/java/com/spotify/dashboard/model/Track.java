@@ -0,0 +1,20 @@
+package com.spotify.dashboard.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+// A track from /me/top/tracks, only what the frontend renders plus the uri (for playlists)
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class) // durationMs <-> "duration_ms" etc
+public record Track(
+    String id,
+    String name,
+    String uri,
+    List<ArtistRef> artists,
+    Album album,
+    long durationMs,
+    ExternalUrls externalUrls) {
+}
@@ -0,0 +1,227 @@
+package com.spotify.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.Artists;
+
+// Artist metadata (genres, images, popularity, ...) cached by artist id and shared by every user,
+// since an artist looks the same no matter whose top list they show up in
+// misses go to /artists?ids=..., and misses from requests arriving at about the same time are sent together:
+// ids pile up in a batch that goes out once it has 50 ids (Spotify's max) or after a few ms, whichever comes first
+@Component
+public class ArtistCatalog {
+
+    static final int MAX_BATCH = 50;
+    private static final long BATCH_WINDOW_MS = 5; // how long a batch waits for company before going out half empty
+
+    // ids collected for the next /artists call, sent with the token of the user who started the batch
+    // any valid token can read artists, so if Spotify rejects that one (expired, revoked) the batch gets one more try
+    // with a second waiting user's token. Only for a rejected token: after a 5xx/429/timeout the scheduler already
+    // retried, and going through everyone's tokens would just multiply the calls during an outage
+    private static final class Batch {
+        final Map<String, CompletableFuture<Artist>> ids = new LinkedHashMap<>();
+        String token;
+        String fallbackToken;
+    }
+
+    private final SpotifyApiService spotifyApiService;
+    private final long batchWindowMs;
+    private final boolean enabled;
+    private final Cache<String, Artist> artists;
+
+    private final Object lock = new Object();
+    private Batch current; // guarded by lock, null when nothing is waiting
+    private final ConcurrentHashMap<String, CompletableFuture<Artist>> loading = new ConcurrentHashMap<>(); // sent, not answered yet
+
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder idsSent = new LongAdder();
+
+    @Autowired
+    public ArtistCatalog(SpotifyApiService spotifyApiService, SpotifyCacheProperties props) {
+        this(spotifyApiService, props, BATCH_WINDOW_MS);
+    }
+
+    // tests use a longer window so their "concurrent" calls reliably land in the same batch
+    ArtistCatalog(SpotifyApiService spotifyApiService, SpotifyCacheProperties props, long batchWindowMs) {
+        this.spotifyApiService = spotifyApiService;
+        this.batchWindowMs = batchWindowMs;
+        this.enabled = props.isEnabled();
+        this.artists = Caffeine.newBuilder()
+            .expireAfterWrite(props.getArtistTtl())
+            .maximumSize(props.getArtistMaximumSize())
+            .recordStats()
+            .build();
+    }
+
+    // Artists for the given ids, keyed by id. Ids Spotify doesn't know are just left out
+    public CompletableFuture<Map<String, Artist>> getArtists(String accessToken, Collection<String> artistIds) {
+        Map<String, CompletableFuture<Artist>> futures = new LinkedHashMap<>();
+        List<Batch> full = new ArrayList<>();
+        synchronized (lock) {
+            for (String id : artistIds) {
+                if (id == null || futures.containsKey(id)) {
+                    continue;
+                }
+                Artist cached = enabled ? artists.getIfPresent(id) : null;
+                if (cached != null) {
+                    futures.put(id, CompletableFuture.completedFuture(cached));
+                    continue;
+                }
+                CompletableFuture<Artist> future = loading.get(id); // someone already asked Spotify for it
+                if (future == null && current != null) {
+                    future = current.ids.get(id); // or it's already in the next batch
+                    if (future != null) {
+                        addToken(current, accessToken); // we're waiting on it too, so our token can be the fallback
+                    }
+                }
+                if (future == null) {
+                    future = enqueue(id, accessToken, full);
+                }
+                futures.put(id, future);
+            }
+        }
+        full.forEach(this::send); // full batches go out right away, outside the lock
+
+        return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+            .thenApply(ignored -> {
+                Map<String, Artist> result = new LinkedHashMap<>();
+                futures.forEach((id, future) -> {
+                    Artist artist = future.join();
+                    if (artist != null) {
+                        result.put(id, artist);
+                    }
+                });
+                return result;
+            });
+    }
+
+    // Artists we got some other way (e.g. inside a top artists response) go straight in, no call needed
+    public void remember(Collection<Artist> known) {
+        if (!enabled || known == null) {
+            return;
+        }
+        for (Artist artist : known) {
+            if (artist != null && artist.id() != null) {
+                artists.put(artist.id(), artist);
+            }
+        }
+    }
+
+    // caller holds the lock
+    private CompletableFuture<Artist> enqueue(String id, String accessToken, List<Batch> full) {
+        if (current == null) {
+            Batch batch = new Batch();
+            current = batch;
+            CompletableFuture.delayedExecutor(batchWindowMs, TimeUnit.MILLISECONDS).execute(() -> flushIfCurrent(batch));
+        }
+        addToken(current, accessToken);
+        CompletableFuture<Artist> future = new CompletableFuture<>();
+        current.ids.put(id, future);
+        if (current.ids.size() == MAX_BATCH) { // full, close it so the next id starts a new one
+            full.add(close(current));
+        }
+        return future;
+    }
+
+    private static void addToken(Batch batch, String accessToken) {
+        if (batch.token == null) {
+            batch.token = accessToken;
+        } else if (batch.fallbackToken == null && !batch.token.equals(accessToken)) {
+            batch.fallbackToken = accessToken;
+        }
+    }
+
+    // timer ran out, send whatever the batch has (unless it already filled up and went out)
+    private void flushIfCurrent(Batch batch) {
+        synchronized (lock) {
+            if (current != batch) {
+                return;
+            }
+            close(batch);
+        }
+        send(batch);
+    }
+
+    // caller holds the lock, moves the ids over to "loading" so new requests for them wait on this call
+    private Batch close(Batch batch) {
+        current = null;
+        loading.putAll(batch.ids);
+        return batch;
+    }
+
+    private void send(Batch batch) {
+        batchesSent.increment();
+        idsSent.add(batch.ids.size());
+        send(batch, batch.token, batch.fallbackToken);
+    }
+
+    private void send(Batch batch, String token, String fallbackToken) {
+        CompletableFuture<Artists> call;
+        try {
+            call = spotifyApiService.getArtistsAsync(token, new ArrayList<>(batch.ids.keySet()));
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((response, error) -> {
+            if (error != null && fallbackToken != null && tokenRejected(error)) {
+                send(batch, fallbackToken, null);
+                return;
+            }
+            Map<String, Artist> byId = new LinkedHashMap<>();
+            if (response != null && response.artists() != null) {
+                for (Artist artist : response.artists()) {
+                    if (artist != null) { // unknown ids come back as null
+                        byId.put(artist.id(), artist);
+                    }
+                }
+                remember(byId.values());
+            }
+            batch.ids.forEach((id, future) -> {
+                loading.remove(id, future);
+                if (error != null) {
+                    future.completeExceptionally(error); // nothing gets cached, so the next request tries again
+                } else {
+                    future.complete(byId.get(id));
+                }
+            });
+        });
+    }
+
+    private static boolean tokenRejected(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof SpotifyApiException apiError && (apiError.getStatus() == 401 || apiError.getStatus() == 403);
+    }
+
+    public CacheStats stats() {
+        return artists.stats();
+    }
+
+    public long size() {
+        return artists.estimatedSize();
+    }
+
+    public long batchesSent() {
+        return batchesSent.sum();
+    }
+
+    public long idsSent() {
+        return idsSent.sum();
+    }
+}
@@ -0,0 +1,134 @@
+package com.spotify.dashboard.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.spotify.dashboard.config.SpotifyResilienceProperties;
+
+// One circuit breaker per Spotify endpoint ("/me/top/tracks", "/playlists/{id}/tracks", ...)
+// - CLOSED: calls go through as usual, we count failures in a row
+// - OPEN: after failure-threshold failures in a row we stop calling that endpoint for open-duration and fail right away
+//   (no point queueing more calls at something that's down, and it gives Spotify room to recover)
+// - HALF_OPEN: once that's over, a single trial call goes through. Works -> CLOSED, fails -> OPEN again
+// only 5xx and network errors count, a 4xx means Spotify is up and just didn't like the request
+// our own overload (scheduler queue or concurrency permit timing out) doesn't count either way, Spotify never saw the call
+@Component
+public class EndpointCircuitBreakers {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final class Circuit {
+        State state = State.CLOSED;
+        int consecutiveFailures;
+        long openedAt; // nanoTime
+        boolean trialInFlight;
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public EndpointCircuitBreakers(SpotifyResilienceProperties props) {
+        this.failureThreshold = props.getFailureThreshold();
+        this.openNanos = props.getOpenDuration().toNanos();
+    }
+
+    public <T> CompletableFuture<T> execute(String endpointKey, Supplier<CompletableFuture<T>> call) {
+        Circuit circuit = circuits.computeIfAbsent(endpointKey, key -> new Circuit());
+        Admission admission = admit(circuit);
+        if (admission == Admission.REJECTED) {
+            return CompletableFuture.failedFuture(new SpotifyApiException(503,
+                "Spotify " + endpointKey + " is failing, not calling it for a bit (circuit open)"));
+        }
+        boolean trial = admission == Admission.TRIAL;
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((value, error) -> record(circuit, trial, error));
+    }
+
+    private enum Admission { REJECTED, CALL, TRIAL }
+
+    private Admission admit(Circuit circuit) {
+        synchronized (circuit) {
+            switch (circuit.state) {
+                case CLOSED:
+                    return Admission.CALL;
+                case OPEN:
+                    if (System.nanoTime() - circuit.openedAt < openNanos) {
+                        return Admission.REJECTED;
+                    }
+                    circuit.state = State.HALF_OPEN; // waited long enough, let one call find out if it's back
+                    circuit.trialInFlight = true;
+                    return Admission.TRIAL;
+                default: // HALF_OPEN, only the one trial call at a time
+                    if (circuit.trialInFlight) {
+                        return Admission.REJECTED;
+                    }
+                    circuit.trialInFlight = true;
+                    return Admission.TRIAL;
+            }
+        }
+    }
+
+    // only the trial call moves an OPEN/HALF_OPEN circuit, anything else finishing then was already in flight
+    // before it opened (a slow success from back then shouldn't skip the cool-down)
+    private void record(Circuit circuit, boolean trial, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        SpotifyApiException apiError = cause instanceof SpotifyApiException e ? e : null;
+        boolean upstreamFailure = apiError != null && apiError.isServerOrNetworkError();
+        synchronized (circuit) {
+            if (trial) {
+                circuit.trialInFlight = false;
+            }
+            if (apiError != null && apiError.isLocalOverload()) {
+                return; // backed up on our side, tells us nothing about Spotify (a trial that got here just frees its slot)
+            }
+            if (!upstreamFailure) { // success, or Spotify answered with a 4xx, either way it's up
+                circuit.consecutiveFailures = 0;
+                if (trial) {
+                    circuit.state = State.CLOSED;
+                }
+                return;
+            }
+            circuit.consecutiveFailures++;
+            if (trial || (circuit.state == State.CLOSED && circuit.consecutiveFailures >= failureThreshold)) {
+                circuit.state = State.OPEN;
+                circuit.openedAt = System.nanoTime();
+            }
+        }
+    }
+
+    public State state(String endpointKey) {
+        Circuit circuit = circuits.get(endpointKey);
+        if (circuit == null) {
+            return State.CLOSED;
+        }
+        synchronized (circuit) {
+            return circuit.state;
+        }
+    }
+
+    // endpoint -> state, for the diagnostics endpoint
+    public Map<String, String> states() {
+        Map<String, String> states = new LinkedHashMap<>();
+        circuits.keySet().stream().sorted().forEach(key -> states.put(key, state(key).name()));
+        return states;
+    }
+
+    // "/users/abc/playlists?x=1" -> "/users/{id}/playlists", so every user shares one circuit per endpoint
+    public static String endpointKey(String endpoint) {
+        int query = endpoint.indexOf('?');
+        String path = query >= 0 ? endpoint.substring(0, query) : endpoint;
+        return path.replaceAll("/(users|playlists)/[^/]+", "/$1/{id}");
+    }
+}
@@ -0,0 +1,188 @@
+package com.spotify.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.GenreBreakdown;
+import com.spotify.dashboard.model.GenreStat;
+
+// Counts genres across a list of top artists and keeps the top K, without boxing or sorting everything
+// - every genre string is interned once into a dictionary shared by all users ("pop" -> 0, "indie pop" -> 1, ...)
+// - counting happens on small int arrays, indexed by a per-call slot for each genre we actually saw
+// - the top K comes out of a bounded heap, so we never sort the full genre list just to keep 10
+public class GenreAggregator {
+
+    private final int topK;
+
+    // genre -> id, and id -> genre (names is swapped for a bigger copy when it fills up)
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[256];
+    private int size; // only touched inside intern()'s synchronized block
+
+    public GenreAggregator(int topK) {
+        this.topK = topK;
+    }
+
+    // Returns the id for a genre, adding it to the dictionary the first time we see it
+    int intern(String genre) {
+        Integer id = ids.get(genre); // fast path, no locking once a genre is known
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(genre);
+            if (id != null) {
+                return id;
+            }
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = genre;
+            names = current; // publish the array before the id, so whoever sees the id also sees the name
+            ids.put(genre, size);
+            return size++;
+        }
+    }
+
+    public int dictionarySize() {
+        return ids.size();
+    }
+
+    // Top genres for one list of artists (in rank order, #1 first)
+    public GenreBreakdown summarize(List<Artist> artists) {
+        if (artists == null || artists.isEmpty()) {
+            return GenreBreakdown.EMPTY;
+        }
+        int artistCount = artists.size();
+        int occurrences = 0;
+        for (Artist artist : artists) {
+            occurrences += artist.genres() == null ? 0 : artist.genres().size();
+        }
+        if (occurrences == 0) {
+            return GenreBreakdown.EMPTY;
+        }
+
+        // slot -> genre id / count / weighted score, slots are handed out in the order genres first show up
+        int[] genreOfSlot = new int[occurrences];
+        int[] counts = new int[occurrences];
+        int[] weights = new int[occurrences];
+        int slots = 0;
+
+        // tiny open addressing table: genre id -> slot + 1 (0 means empty), at most half full
+        int tableSize = Integer.highestOneBit(occurrences * 2 - 1) << 1;
+        int[] table = new int[tableSize];
+        int mask = tableSize - 1;
+
+        for (int rank = 0; rank < artistCount; rank++) {
+            List<String> genres = artists.get(rank).genres();
+            if (genres == null) {
+                continue;
+            }
+            int weight = artistCount - rank; // #1 of 50 counts 50, #50 counts 1
+            for (int i = 0; i < genres.size(); i++) {
+                int id = intern(genres.get(i));
+                int bucket = (id * 0x9E3779B9) & mask; // spread ids out a bit before probing
+                while (table[bucket] != 0 && genreOfSlot[table[bucket] - 1] != id) {
+                    bucket = (bucket + 1) & mask;
+                }
+                if (table[bucket] == 0) {
+                    genreOfSlot[slots] = id;
+                    table[bucket] = ++slots;
+                }
+                int slot = table[bucket] - 1;
+                counts[slot]++;
+                weights[slot] += weight;
+            }
+        }
+
+        int totalWeight = artistCount * (artistCount + 1) / 2;
+        String[] dictionary = names;
+        List<GenreStat> byCount = toStats(topSlots(counts, slots), genreOfSlot, counts, weights, dictionary, artistCount, totalWeight);
+        List<GenreStat> byWeight = toStats(topSlots(weights, slots), genreOfSlot, counts, weights, dictionary, artistCount, totalWeight);
+        return new GenreBreakdown(byCount, byWeight);
+    }
+
+    // Best K slots by key, highest first. Ties go to the genre we saw first (i.e. from the higher ranked artist)
+    private int[] topSlots(int[] key, int slots) {
+        int k = Math.min(topK, slots);
+        int[] heap = new int[k]; // min-heap, the root is the weakest of the current top K
+        int heapSize = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (heapSize < k) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++, key);
+            } else if (better(slot, heap[0], key)) {
+                heap[0] = slot;
+                siftDown(heap, heapSize, key);
+            }
+        }
+        // pop everything, the weakest comes out first so fill from the back
+        int[] ordered = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            ordered[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, key);
+        }
+        return ordered;
+    }
+
+    private static boolean better(int a, int b, int[] key) {
+        return key[a] > key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int index, int[] key) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(heap[parent], heap[index], key)) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, int[] key) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int weakest = left + 1 < size && better(heap[left], heap[left + 1], key) ? left + 1 : left;
+            if (!better(heap[index], heap[weakest], key)) {
+                return;
+            }
+            swap(heap, index, weakest);
+            index = weakest;
+        }
+    }
+
+    private static void swap(int[] heap, int a, int b) {
+        int tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+
+    private static List<GenreStat> toStats(int[] ordered, int[] genreOfSlot, int[] counts, int[] weights,
+                                           String[] dictionary, int artistCount, int totalWeight) {
+        List<GenreStat> stats = new ArrayList<>(ordered.length);
+        for (int slot : ordered) {
+            stats.add(new GenreStat(
+                dictionary[genreOfSlot[slot]],
+                counts[slot],
+                round2(counts[slot] * 100.0 / artistCount),
+                weights[slot],
+                round2(weights[slot] * 100.0 / totalWeight)
+            ));
+        }
+        return stats;
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0; // Round percentage to 2 decimals
+    }
+}
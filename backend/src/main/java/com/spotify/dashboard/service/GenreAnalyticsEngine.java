@@ -0,0 +1,160 @@
+package com.spotify.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.GenreBreakdown;
+import com.spotify.dashboard.model.Track;
+
+// Genre analytics for all three time ranges
+// an /analytics/genres call works out the range the user asked for and answers as soon as that one's done,
+// the other two are fetched as background work and cached, so switching the time range dropdown afterwards
+// is usually just a cache hit. A background range failing never shows up in the response, it's just not cached
+// source "tracks" does the same from top tracks instead: each track counts with its lead artist's genres,
+// which come from the shared ArtistCatalog (usually already cached, otherwise a few batched /artists calls)
+@Component
+public class GenreAnalyticsEngine {
+
+    public static final List<String> TIME_RANGES = List.of("short_term", "medium_term", "long_term");
+    public static final String SOURCE_ARTISTS = "artists";
+    public static final String SOURCE_TRACKS = "tracks";
+    private static final int ITEM_LIMIT = 50; // Spotify's max, more artists/tracks = better genre picture
+    private static final int TOP_GENRES = 10;
+
+    private final SpotifyApiService spotifyApiService;
+    private final ArtistCatalog artistCatalog;
+    private final GenreAggregator aggregator = new GenreAggregator(TOP_GENRES);
+    private final boolean cacheEnabled;
+
+    // hashed token + source + time range -> breakdown
+    // an async cache, so if two requests miss at the same time the second one just waits for the first one's result
+    private final AsyncCache<String, GenreBreakdown> breakdowns;
+
+    public GenreAnalyticsEngine(SpotifyApiService spotifyApiService, ArtistCatalog artistCatalog, SpotifyCacheProperties props) {
+        this.spotifyApiService = spotifyApiService;
+        this.artistCatalog = artistCatalog;
+        this.cacheEnabled = props.isEnabled();
+        this.breakdowns = Caffeine.newBuilder()
+            .expireAfterWrite(props.getTopItemsTtl()) // same lifetime as the top artists it's built from
+            .maximumSize(30_000)
+            .buildAsync();
+    }
+
+    // Breakdown for one time range, only waits on that range. The other two get warmed up in the background
+    public CompletableFuture<GenreBreakdown> breakdown(String accessToken, String timeRange, String source) {
+        CompletableFuture<GenreBreakdown> wanted = cached(accessToken, timeRange, source);
+        warmOtherRanges(accessToken, timeRange, source);
+        return wanted;
+    }
+
+    // All three ranges, for the login prefetch. wantedRange goes out as interactive, the other two as background work
+    // a range that failed is left out of the map instead of failing the whole thing
+    public CompletableFuture<Map<String, GenreBreakdown>> report(String accessToken, String wantedRange, String source) {
+        Map<String, CompletableFuture<GenreBreakdown>> ranges = new LinkedHashMap<>();
+        for (String timeRange : TIME_RANGES) {
+            ranges.put(timeRange, timeRange.equals(wantedRange)
+                ? cached(accessToken, timeRange, source)
+                : RequestPriority.background(() -> cached(accessToken, timeRange, source)));
+        }
+        return CompletableFuture.allOf(ranges.values().stream()
+                .map(range -> range.exceptionally(error -> null))
+                .toArray(CompletableFuture[]::new))
+            .thenApply(ignored -> {
+                Map<String, GenreBreakdown> report = new LinkedHashMap<>();
+                ranges.forEach((timeRange, range) -> {
+                    if (!range.isCompletedExceptionally()) {
+                        report.put(timeRange, range.join());
+                    }
+                });
+                return report;
+            });
+    }
+
+    // For callers that already have the artists in hand (e.g. /dashboard), no extra Spotify calls
+    public GenreBreakdown summarize(List<Artist> artists) {
+        return aggregator.summarize(artists);
+    }
+
+    private CompletableFuture<GenreBreakdown> cached(String accessToken, String timeRange, String source) {
+        boolean fromTracks = SOURCE_TRACKS.equals(source);
+        if (!cacheEnabled) {
+            return compute(accessToken, timeRange, fromTracks);
+        }
+        // failed futures are dropped from an AsyncCache automatically, so errors never get cached
+        return breakdowns.get(key(accessToken, timeRange, fromTracks), (ignored, executor) -> compute(accessToken, timeRange, fromTracks));
+    }
+
+    // fire and forget: nobody waits on these, a failure just means that range gets fetched when someone asks for it
+    private void warmOtherRanges(String accessToken, String wantedRange, String source) {
+        if (!cacheEnabled) {
+            return; // nowhere to keep them
+        }
+        boolean fromTracks = SOURCE_TRACKS.equals(source);
+        for (String timeRange : TIME_RANGES) {
+            if (!timeRange.equals(wantedRange) && breakdowns.getIfPresent(key(accessToken, timeRange, fromTracks)) == null) {
+                RequestPriority.background(() -> cached(accessToken, timeRange, source));
+            }
+        }
+    }
+
+    private static String key(String accessToken, String timeRange, boolean fromTracks) {
+        return TokenHashes.of(accessToken) + " " + (fromTracks ? SOURCE_TRACKS : SOURCE_ARTISTS) + " " + timeRange;
+    }
+
+    // runs at whatever priority the caller set (see RequestPriority), follow-up calls included
+    private CompletableFuture<GenreBreakdown> compute(String accessToken, String timeRange, boolean fromTracks) {
+        return fromTracks ? computeFromTracks(accessToken, timeRange) : computeFromArtists(accessToken, timeRange);
+    }
+
+    private CompletableFuture<GenreBreakdown> computeFromArtists(String accessToken, String timeRange) {
+        // same limit as the frontend asks for, so these land in (and come from) the regular response cache too
+        return spotifyApiService.getTopArtistsAsync(accessToken, timeRange, ITEM_LIMIT).thenApply(page -> {
+            List<Artist> artists = page.items();
+            artistCatalog.remember(artists); // free catalog warm up, these are full artist objects
+            return aggregator.summarize(artists);
+        });
+    }
+
+    private CompletableFuture<GenreBreakdown> computeFromTracks(String accessToken, String timeRange) {
+        RequestPriority priority = RequestPriority.current(); // the catalog lookup runs later, on whatever thread answers
+        return spotifyApiService.getTopTracksAsync(accessToken, timeRange, ITEM_LIMIT).thenCompose(page -> {
+            // lead artist of every track, so it's a single catalog lookup
+            Set<String> artistIds = new LinkedHashSet<>();
+            page.items().forEach(track -> {
+                String leadId = leadArtistId(track);
+                if (leadId != null) {
+                    artistIds.add(leadId);
+                }
+            });
+            Supplier<CompletableFuture<Map<String, Artist>>> lookup = () -> artistCatalog.getArtists(accessToken, artistIds);
+            return (priority == RequestPriority.BACKGROUND ? RequestPriority.background(lookup) : lookup.get())
+                .thenApply(artistsById -> {
+                    // one entry per track in rank order (the same artist can show up several times, that's the point)
+                    List<Artist> leads = new ArrayList<>();
+                    for (Track track : page.items()) {
+                        Artist lead = artistsById.get(leadArtistId(track));
+                        if (lead != null) {
+                            leads.add(lead);
+                        }
+                    }
+                    return aggregator.summarize(leads);
+                });
+        });
+    }
+
+    private static String leadArtistId(Track track) {
+        return track.artists() == null || track.artists().isEmpty() ? null : track.artists().get(0).id();
+    }
+}
@@ -0,0 +1,195 @@
+package com.spotify.dashboard.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.spotify.dashboard.config.SpotifyHistoryProperties;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.GenreDrift;
+import com.spotify.dashboard.model.GenreStat;
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.RankMovement;
+import com.spotify.dashboard.model.Track;
+import com.spotify.dashboard.model.UserProfile;
+
+// Records everyone's top tracks, artists and genres every snapshot-interval (see SnapshotStore),
+// and answers "how did my top list change" questions from those snapshots without calling Spotify
+// snapshots are taken at login and by a scheduled job for every user with a live session (see SpotifyTokenStore)
+// always with limit 50, so they mostly come out of the response cache the dashboard just filled
+@Component
+public class ListeningHistory {
+
+    private static final int ITEM_LIMIT = 50;
+    private static final int TOP_GENRES = 50; // more than the pie chart shows, so a genre drifting out of the top 10 still has a value
+
+    private final SnapshotStore store;
+    private final SpotifyApiService spotifyApiService;
+    private final SpotifyTokenStore tokenStore;
+    private final boolean enabled;
+    private final long intervalMillis;
+    private final GenreAggregator aggregator = new GenreAggregator(TOP_GENRES);
+    private final Set<String> capturing = ConcurrentHashMap.newKeySet(); // users with a capture running
+
+    public ListeningHistory(SnapshotStore store, SpotifyApiService spotifyApiService, SpotifyTokenStore tokenStore,
+                            SpotifyHistoryProperties props) {
+        this.store = store;
+        this.spotifyApiService = spotifyApiService;
+        this.tokenStore = tokenStore;
+        this.enabled = props.isEnabled();
+        this.intervalMillis = props.getSnapshotInterval().toMillis();
+    }
+
+    // Takes whichever snapshots for this user are due, as background work
+    // accessToken is the session ID for our own sessions, same as on a request
+    public CompletableFuture<Void> captureIfDue(String userId, String accessToken) {
+        if (!enabled || !capturing.add(userId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long now = System.currentTimeMillis();
+        List<CompletableFuture<?>> captures = new ArrayList<>();
+        for (int range = 0; range < GenreAnalyticsEngine.TIME_RANGES.size(); range++) {
+            String timeRange = GenreAnalyticsEngine.TIME_RANGES.get(range);
+            int rangeIndex = range;
+            if (isDue(userId, SnapshotStore.Kind.TRACKS, range, now)) {
+                captures.add(RequestPriority.background(() -> spotifyApiService.getTopTracksAsync(accessToken, timeRange, ITEM_LIMIT))
+                    .thenAccept(page -> store.append(userId, SnapshotStore.Kind.TRACKS, rangeIndex, now, tracks(page))));
+            }
+            if (isDue(userId, SnapshotStore.Kind.ARTISTS, range, now)) {
+                captures.add(RequestPriority.background(() -> spotifyApiService.getTopArtistsAsync(accessToken, timeRange, ITEM_LIMIT))
+                    .thenAccept(page -> {
+                        store.append(userId, SnapshotStore.Kind.ARTISTS, rangeIndex, now, artists(page));
+                        store.append(userId, SnapshotStore.Kind.GENRES, rangeIndex, now, genres(page.items()));
+                    }));
+            }
+        }
+        // a failed capture is simply due again next time
+        return CompletableFuture.allOf(captures.stream().map(capture -> capture.exceptionally(error -> null)).toArray(CompletableFuture[]::new))
+            .whenComplete((ignored, error) -> capturing.remove(userId));
+    }
+
+    // Runs every check-interval for everyone with a live session, so people who don't open the dashboard
+    // every day still get their daily snapshot
+    @Scheduled(fixedDelayString = "${spotify.history.check-interval:1h}", initialDelayString = "${spotify.history.check-interval:1h}")
+    public void captureSessions() {
+        tokenStore.forEachSession(this::captureIfDue);
+    }
+
+    private boolean isDue(String userId, SnapshotStore.Kind kind, int range, long now) {
+        long last = store.lastTakenAt(userId, kind, range);
+        return last < 0 || now - last >= intervalMillis;
+    }
+
+    // Spotify user ID for a request's token. Our own sessions know it, anyone else costs a (cached) /me
+    public CompletableFuture<String> userId(String accessToken) {
+        String userId = tokenStore.userId(accessToken);
+        return userId != null ? CompletableFuture.completedFuture(userId)
+            : spotifyApiService.getCurrentUserAsync(accessToken).thenApply(UserProfile::id);
+    }
+
+    // How each track/artist in the newest snapshot moved since the oldest one in the window, plus what fell out
+    // change > 0 means it climbed. "ranks" is its rank in every snapshot (null = wasn't in the top 50 then)
+    public Map<String, Object> rankMovement(String userId, SnapshotStore.Kind kind, String timeRange, Instant from, Instant to) {
+        List<SnapshotStore.Snapshot> snapshots = store.snapshots(userId, kind, rangeIndex(timeRange), from.toEpochMilli(), to.toEpochMilli());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("snapshots", snapshots.stream().map(snapshot -> Instant.ofEpochMilli(snapshot.takenAt()).toString()).toList());
+        if (snapshots.isEmpty()) {
+            result.put("items", List.of());
+            result.put("dropped", List.of());
+            return result;
+        }
+
+        // id -> rank in each snapshot, filled in one pass over all of them
+        Map<String, Integer[]> ranks = new HashMap<>();
+        Map<String, String> names = new HashMap<>();
+        for (int s = 0; s < snapshots.size(); s++) {
+            List<SnapshotStore.Item> items = snapshots.get(s).items();
+            for (int rank = 0; rank < items.size(); rank++) {
+                SnapshotStore.Item item = items.get(rank);
+                ranks.computeIfAbsent(item.key(), key -> new Integer[snapshots.size()])[s] = rank + 1;
+                names.put(item.key(), item.label()); // the newest name wins
+            }
+        }
+
+        int last = snapshots.size() - 1;
+        List<RankMovement> movements = new ArrayList<>();
+        for (SnapshotStore.Item item : snapshots.get(last).items()) {
+            Integer[] history = ranks.get(item.key());
+            movements.add(movement(item.key(), names.get(item.key()), history[last], history[0], history));
+        }
+        List<RankMovement> dropped = new ArrayList<>();
+        for (SnapshotStore.Item item : snapshots.get(0).items()) {
+            Integer[] history = ranks.get(item.key());
+            if (history[last] == null) {
+                dropped.add(movement(item.key(), names.get(item.key()), null, history[0], history));
+            }
+        }
+        result.put("items", movements);
+        result.put("dropped", dropped);
+        return result;
+    }
+
+    private static RankMovement movement(String id, String name, Integer rank, Integer previousRank, Integer[] history) {
+        Integer change = rank != null && previousRank != null ? previousRank - rank : null;
+        return new RankMovement(id, name, rank, previousRank, change, Arrays.asList(history));
+    }
+
+    // How each genre's (rank-weighted) share changed across the window, biggest movers first
+    public Map<String, Object> genreDrift(String userId, String timeRange, Instant from, Instant to) {
+        List<SnapshotStore.Snapshot> snapshots = store.snapshots(userId, SnapshotStore.Kind.GENRES, rangeIndex(timeRange),
+            from.toEpochMilli(), to.toEpochMilli());
+        Map<String, double[]> shares = new LinkedHashMap<>();
+        for (int s = 0; s < snapshots.size(); s++) {
+            for (SnapshotStore.Item item : snapshots.get(s).items()) {
+                shares.computeIfAbsent(item.key(), key -> new double[snapshots.size()])[s] = item.value() / 100.0;
+            }
+        }
+        List<GenreDrift> genres = new ArrayList<>();
+        shares.forEach((genre, series) -> {
+            double first = series[0];
+            double last = series[series.length - 1];
+            genres.add(new GenreDrift(genre, first, last, Math.round((last - first) * 100.0) / 100.0,
+                Arrays.stream(series).boxed().toList()));
+        });
+        genres.sort(Comparator.comparingDouble((GenreDrift drift) -> Math.abs(drift.change())).reversed());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("snapshots", snapshots.stream().map(snapshot -> Instant.ofEpochMilli(snapshot.takenAt()).toString()).toList());
+        result.put("genres", genres);
+        return result;
+    }
+
+    private static int rangeIndex(String timeRange) {
+        return GenreAnalyticsEngine.TIME_RANGES.indexOf(timeRange);
+    }
+
+    private static List<SnapshotStore.Item> tracks(Paging<Track> page) {
+        // local files in someone's top tracks have no Spotify ID, nothing to track them by
+        return page.items().stream().filter(track -> track.id() != null)
+            .map(track -> new SnapshotStore.Item(track.id(), track.name(), 0)).toList();
+    }
+
+    private static List<SnapshotStore.Item> artists(Paging<Artist> page) {
+        return page.items().stream().map(artist -> new SnapshotStore.Item(artist.id(), artist.name(), 0)).toList();
+    }
+
+    // weighted share, in hundredths of a percent so it fits the int slot
+    private List<SnapshotStore.Item> genres(List<Artist> artists) {
+        List<SnapshotStore.Item> items = new ArrayList<>();
+        for (GenreStat stat : aggregator.summarize(artists).weighted()) {
+            items.add(new SnapshotStore.Item(stat.name(), null, (int) Math.round(stat.weightedPercentage() * 100)));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,44 @@
+package com.spotify.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+// Right after login we already know what the dashboard is about to ask for: the profile, and top tracks + artists
+// (50 of each) for every time range. So we start fetching it while the browser is still redirecting,
+// and by the time the first dashboard request comes in it's either cached or joins the call that's already running
+// the range the dashboard opens on goes out as interactive, the other two as background work
+@Component
+public class LoginPrefetcher {
+
+    private static final int ITEM_LIMIT = 50; // what the dashboard asks for, so the cache keys line up
+
+    private final SpotifyApiService spotifyApiService;
+    private final GenreAnalyticsEngine genreAnalyticsEngine;
+
+    public LoginPrefetcher(SpotifyApiService spotifyApiService, GenreAnalyticsEngine genreAnalyticsEngine) {
+        this.spotifyApiService = spotifyApiService;
+        this.genreAnalyticsEngine = genreAnalyticsEngine;
+    }
+
+    // Fire and forget, a failure here only means the dashboard fetches it itself later
+    // returns the combined future anyway so tests (and anyone curious) can wait on it
+    public CompletableFuture<Void> prefetch(String accessToken, String openingRange) {
+        List<CompletableFuture<?>> calls = new ArrayList<>();
+        for (String timeRange : GenreAnalyticsEngine.TIME_RANGES) {
+            calls.add(withPriority(timeRange, openingRange, () -> spotifyApiService.getTopTracksAsync(accessToken, timeRange, ITEM_LIMIT)));
+        }
+        // the genre report fetches top artists for all three ranges itself (same limit, same cache entries)
+        calls.add(genreAnalyticsEngine.report(accessToken, openingRange, GenreAnalyticsEngine.SOURCE_ARTISTS));
+        return CompletableFuture.allOf(calls.stream()
+            .map(call -> call.exceptionally(error -> null))
+            .toArray(CompletableFuture[]::new));
+    }
+
+    private static <T> CompletableFuture<T> withPriority(String timeRange, String openingRange, Supplier<CompletableFuture<T>> call) {
+        return timeRange.equals(openingRange) ? call.get() : RequestPriority.background(call);
+    }
+}
@@ -0,0 +1,321 @@
+package com.spotify.dashboard.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.spotify.dashboard.config.OutboundConcurrencyLimiter;
+import com.spotify.dashboard.config.SpotifyRateLimitProperties;
+
+// Decides when each Spotify call actually goes out, so we stay under our app-wide rate limit
+// - token bucket: at most requests-per-second on average, with short bursts up to "burst"
+// - 429s: we stop sending anything until Retry-After has passed (the limit is shared, so everyone waits),
+//   then retry the call
+// - 5xx / network errors: retried after a random ("jittered") backoff that doubles each time, GETs only,
+//   since retrying a POST that might have gone through could create the same playlist twice
+// - fairness: every user has their own queue and we take turns between users, so one user loading
+//   500 tracks can't push everyone else to the back. Interactive calls always go before background ones
+// the actual HTTP call still goes through OutboundConcurrencyLimiter, this only decides the order and timing
+@Component
+public class OutboundScheduler {
+
+    private static final class Task<T> {
+        final String userKey;
+        final RequestPriority priority;
+        final boolean retryable; // safe to resend after a 5xx or network error
+        final Supplier<CompletableFuture<T>> call;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        volatile int attempt; // read by the queue timeout timer
+        long queuedAt; // nanoTime when it (re)joined the queue
+
+        Task(String userKey, RequestPriority priority, boolean retryable, Supplier<CompletableFuture<T>> call) {
+            this.userKey = userKey;
+            this.priority = priority;
+            this.retryable = retryable;
+            this.call = call;
+        }
+    }
+
+    private final OutboundConcurrencyLimiter limiter;
+    private final double tokensPerNano;
+    private final int burst;
+    private final int maxRetries;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long maxRetryAfterNanos;
+    private final long queueTimeoutMillis;
+
+    private final Object lock = new Object();
+    // everything below (up to the metrics) is guarded by lock
+    // priority -> (user -> their waiting calls), the user at the front of the LinkedHashMap is next in line
+    private final EnumMap<RequestPriority, LinkedHashMap<String, ArrayDeque<Task<?>>>> queues = new EnumMap<>(RequestPriority.class);
+    private final EnumMap<RequestPriority, Integer> depth = new EnumMap<>(RequestPriority.class);
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil; // nanoTime, set from Retry-After
+    private boolean wakeupScheduled;
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder(); // 429s we got back
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public OutboundScheduler(OutboundConcurrencyLimiter limiter, SpotifyRateLimitProperties props) {
+        this.limiter = limiter;
+        this.tokensPerNano = props.getRequestsPerSecond() / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, props.getBurst());
+        this.maxRetries = props.getMaxRetries();
+        this.baseBackoffNanos = props.getBaseBackoff().toNanos();
+        this.maxBackoffNanos = props.getMaxBackoff().toNanos();
+        this.maxRetryAfterNanos = props.getMaxRetryAfter().toNanos();
+        this.queueTimeoutMillis = props.getQueueTimeout().toMillis();
+        this.tokens = burst; // start full
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = lastRefill;
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+            depth.put(priority, 0);
+        }
+    }
+
+    // Queues a call for this user, the future completes with its result once it went out (and maybe got retried)
+    public <T> CompletableFuture<T> submit(String userKey, RequestPriority priority, boolean retryable, Supplier<CompletableFuture<T>> call) {
+        Task<T> task = new Task<>(userKey, priority, retryable, call);
+        enqueue(task, false);
+        startQueueTimeout(task);
+        drain();
+        return task.result;
+    }
+
+    // if it's still sitting in the queue queue-timeout after it (re)joined, give up
+    // a 429 retry joins right away but can't go before the Retry-After pause ends, so its clock starts from there.
+    // Each (re)queue gets its own timer, an older one that fires after the task moved on does nothing
+    private void startQueueTimeout(Task<?> task) {
+        int attempt = task.attempt;
+        long pausedNanos;
+        synchronized (lock) {
+            pausedNanos = Math.max(0, pausedUntil - System.nanoTime());
+        }
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis) + pausedNanos;
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            if (task.attempt == attempt && remove(task)) {
+                timedOut.increment();
+                task.result.completeExceptionally(SpotifyApiException.overloaded(
+                    "Spotify request queue timed out after " + queueTimeoutMillis + "ms"));
+            }
+        });
+    }
+
+    private void enqueue(Task<?> task, boolean front) {
+        synchronized (lock) {
+            task.queuedAt = System.nanoTime();
+            ArrayDeque<Task<?>> userQueue = queues.get(task.priority).computeIfAbsent(task.userKey, key -> new ArrayDeque<>());
+            if (front) {
+                userQueue.addFirst(task); // a retry keeps its place at the front of that user's line
+            } else {
+                userQueue.addLast(task);
+            }
+            depth.merge(task.priority, 1, Integer::sum);
+        }
+    }
+
+    private boolean remove(Task<?> task) {
+        synchronized (lock) {
+            Map<String, ArrayDeque<Task<?>>> byUser = queues.get(task.priority);
+            ArrayDeque<Task<?>> userQueue = byUser.get(task.userKey);
+            if (userQueue == null || !userQueue.remove(task)) {
+                return false;
+            }
+            if (userQueue.isEmpty()) {
+                byUser.remove(task.userKey);
+            }
+            depth.merge(task.priority, -1, Integer::sum);
+            return true;
+        }
+    }
+
+    // Sends as many queued calls as the bucket (and the concurrency limiter) allows right now
+    private void drain() {
+        List<Task<?>> ready = new ArrayList<>();
+        synchronized (lock) {
+            long now = System.nanoTime();
+            if (now - pausedUntil < 0) { // nanoTime can be negative, so compare the difference
+                scheduleWakeup(pausedUntil - now);
+                return;
+            }
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            while (tokens >= 1 && limiter.available() > ready.size()) {
+                Task<?> next = pollNext();
+                if (next == null) {
+                    break;
+                }
+                tokens -= 1;
+                ready.add(next);
+            }
+            if (queued() > 0) {
+                if (tokens < 1) {
+                    scheduleWakeup((long) Math.ceil((1 - tokens) / tokensPerNano)); // come back when the next token is in
+                } else {
+                    // all concurrency permits are taken. Our own calls finishing will drain again,
+                    // this is just in case they're all held by someone else (e.g. the token exchange)
+                    scheduleWakeup(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+            }
+        }
+        ready.forEach(this::start);
+    }
+
+    // caller holds the lock. Interactive first, and within a priority the user at the front, who then goes to the back
+    private Task<?> pollNext() {
+        for (RequestPriority priority : RequestPriority.values()) {
+            LinkedHashMap<String, ArrayDeque<Task<?>>> byUser = queues.get(priority);
+            Iterator<Map.Entry<String, ArrayDeque<Task<?>>>> users = byUser.entrySet().iterator();
+            if (!users.hasNext()) {
+                continue;
+            }
+            Map.Entry<String, ArrayDeque<Task<?>>> first = users.next();
+            Task<?> task = first.getValue().pollFirst();
+            users.remove();
+            if (!first.getValue().isEmpty()) {
+                byUser.put(first.getKey(), first.getValue()); // re-inserting puts them at the back of the line
+            }
+            depth.merge(priority, -1, Integer::sum);
+            return task;
+        }
+        return null;
+    }
+
+    // caller holds the lock
+    private void scheduleWakeup(long delayNanos) {
+        if (wakeupScheduled) {
+            return;
+        }
+        wakeupScheduled = true;
+        CompletableFuture.delayedExecutor(Math.max(delayNanos, 1), TimeUnit.NANOSECONDS).execute(() -> {
+            synchronized (lock) {
+                wakeupScheduled = false;
+            }
+            drain();
+        });
+    }
+
+    private <T> void start(Task<T> task) {
+        long waited = System.nanoTime() - task.queuedAt;
+        dispatched.increment();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        limiter.submit(task.call).whenComplete((value, error) -> {
+            if (error == null) {
+                task.result.complete(value);
+            } else {
+                handleFailure(task, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+            drain(); // a concurrency permit just freed up
+        });
+    }
+
+    private <T> void handleFailure(Task<T> task, Throwable error) {
+        SpotifyApiException apiError = error instanceof SpotifyApiException e ? e : null;
+        if (apiError == null || task.attempt >= maxRetries) {
+            task.result.completeExceptionally(error);
+            return;
+        }
+        if (apiError.isRateLimited()) {
+            rateLimited.increment();
+            if (apiError.getRetryAfterSeconds() >= 0) {
+                long waitNanos = TimeUnit.SECONDS.toNanos(apiError.getRetryAfterSeconds());
+                if (waitNanos > maxRetryAfterNanos) {
+                    task.result.completeExceptionally(error); // too long to hold the user's request, let them know instead
+                    return;
+                }
+                synchronized (lock) {
+                    long until = System.nanoTime() + waitNanos;
+                    if (until - pausedUntil > 0) {
+                        pausedUntil = until; // nobody sends until then
+                    }
+                }
+                retry(task, 0);
+                return;
+            }
+            retry(task, backoff(task.attempt)); // 429 without Retry-After, just back off
+            return;
+        }
+        if (apiError.isLocalOverload()) {
+            retry(task, backoff(task.attempt)); // never got a concurrency permit, so it never went out, safe even for a POST
+            return;
+        }
+        if (apiError.isServerOrNetworkError() && task.retryable) {
+            retry(task, backoff(task.attempt));
+            return;
+        }
+        task.result.completeExceptionally(error); // 4xx, our fault, retrying won't help
+    }
+
+    private void retry(Task<?> task, long delayNanos) {
+        task.attempt++;
+        retries.increment();
+        Runnable requeue = () -> {
+            enqueue(task, true);
+            startQueueTimeout(task);
+            drain();
+        };
+        if (delayNanos <= 0) {
+            requeue.run();
+        } else {
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(requeue);
+        }
+    }
+
+    // "full jitter": anywhere between 0 and base * 2^attempt (capped), so retries from many users don't line up
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    // caller holds the lock
+    private int queued() {
+        return depth.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public int queueDepth(RequestPriority priority) {
+        synchronized (lock) {
+            return depth.get(priority);
+        }
+    }
+
+    public int waitingUsers() {
+        synchronized (lock) {
+            return queues.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+
+    public long pausedForMillis() {
+        synchronized (lock) {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(pausedUntil - System.nanoTime()));
+        }
+    }
+
+    public long dispatchedCount() { return dispatched.sum(); }
+    public long retryCount() { return retries.sum(); }
+    public long rateLimitedCount() { return rateLimited.sum(); }
+    public long timedOutCount() { return timedOut.sum(); }
+    public long totalWaitNanos() { return totalWaitNanos.sum(); }
+    public long maxWaitNanos() { return maxWaitNanos.get(); }
+}
@@ -0,0 +1,125 @@
+package com.spotify.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.stereotype.Component;
+
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+
+// Picks the tracks for a generated playlist and adds them, for playlists bigger than one page of top tracks
+// - top tracks are fetched 50 at a time (Spotify's page size), all pages at once using offset
+// - the "template" from the request decides which tracks and in what order
+// - tracks are added 100 per call (Spotify's max per add)
+@Component
+public class PlaylistBuilder {
+
+    public static final String TEMPLATE_TOP_TRACKS = "top-tracks"; // top tracks for the time range, in rank order
+    public static final String TEMPLATE_SHUFFLED = "shuffled"; // same tracks, random order
+    public static final String TEMPLATE_ALL_TIME_MIX = "all-time-mix"; // last 4 weeks, 6 months and all time taken in turns, no duplicates
+    public static final String TEMPLATE_PATTERN = "^(top-tracks|shuffled|all-time-mix)$";
+
+    public static final int MAX_TRACKS = 500;
+    static final int PAGE_SIZE = 50;
+    static final int ADD_BATCH_SIZE = 100;
+
+    private final SpotifyApiService spotifyApiService;
+
+    public PlaylistBuilder(SpotifyApiService spotifyApiService) {
+        this.spotifyApiService = spotifyApiService;
+    }
+
+    // Track URIs for the playlist, at most trackCount of them (fewer if the user doesn't have that many top tracks)
+    public CompletableFuture<List<String>> selectTracks(String accessToken, String template, String timeRange, int trackCount) {
+        if (TEMPLATE_ALL_TIME_MIX.equals(template)) {
+            List<CompletableFuture<List<Track>>> ranges = GenreAnalyticsEngine.TIME_RANGES.stream()
+                .map(range -> fetchTopTracks(accessToken, range, trackCount))
+                .toList();
+            return CompletableFuture.allOf(ranges.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> interleave(ranges.stream().map(CompletableFuture::join).toList(), trackCount));
+        }
+        return fetchTopTracks(accessToken, timeRange, trackCount).thenApply(tracks -> {
+            List<String> uris = new ArrayList<>(uniqueUris(tracks, trackCount));
+            if (TEMPLATE_SHUFFLED.equals(template)) {
+                Collections.shuffle(uris, ThreadLocalRandom.current());
+            }
+            return uris;
+        });
+    }
+
+    // Adds the tracks in chunks of 100, resolves to how many were added
+    // the chunks go out one after the other on purpose: Spotify appends in the order calls arrive, so sending them
+    // all at once could shuffle the playlist (and a "position" past the current end is rejected).
+    // for 500 tracks that's 5 short calls, everything before it (pages, profile) already ran in parallel
+    public CompletableFuture<Integer> addTracks(String accessToken, String playlistId, List<String> uris) {
+        CompletableFuture<Integer> chain = CompletableFuture.completedFuture(0);
+        for (int start = 0; start < uris.size(); start += ADD_BATCH_SIZE) {
+            List<String> chunk = uris.subList(start, Math.min(start + ADD_BATCH_SIZE, uris.size()));
+            chain = chain.thenCompose(added -> spotifyApiService
+                .addTracksToPlaylistAsync(accessToken, playlistId, Map.of("uris", chunk))
+                .thenApply(response -> added + chunk.size()));
+        }
+        return chain;
+    }
+
+    // Top tracks #1..#trackCount for one time range, every page requested at the same time
+    private CompletableFuture<List<Track>> fetchTopTracks(String accessToken, String timeRange, int trackCount) {
+        List<CompletableFuture<Paging<Track>>> pages = new ArrayList<>();
+        for (int offset = 0; offset < trackCount; offset += PAGE_SIZE) {
+            CompletableFuture<Paging<Track>> page = spotifyApiService.getTopTracksAsync(accessToken, timeRange, PAGE_SIZE, offset);
+            if (offset > 0) {
+                // past the first page, a failure usually just means the user doesn't have that many top tracks,
+                // so we make do with what we got instead of failing the whole playlist
+                page = page.exceptionally(error -> null);
+            }
+            pages.add(page);
+        }
+        return CompletableFuture.allOf(pages.toArray(CompletableFuture[]::new))
+            .thenApply(ignored -> {
+                List<Track> tracks = new ArrayList<>();
+                for (CompletableFuture<Paging<Track>> page : pages) {
+                    Paging<Track> result = page.join();
+                    if (result == null || result.items() == null || result.items().isEmpty()) {
+                        break; // ran out of top tracks, later pages would be empty too
+                    }
+                    tracks.addAll(result.items());
+                }
+                return tracks;
+            });
+    }
+
+    // uniqueUris and interleave are package-private for the benchmarks (src/jmh)
+    static Set<String> uniqueUris(List<Track> tracks, int trackCount) {
+        Set<String> uris = new LinkedHashSet<>();
+        for (Track track : tracks) {
+            if (uris.size() == trackCount) {
+                break;
+            }
+            if (track != null && track.uri() != null) {
+                uris.add(track.uri());
+            }
+        }
+        return uris;
+    }
+
+    // #1 of each range, then #2 of each range, ... skipping tracks we already have
+    static List<String> interleave(List<List<Track>> ranges, int trackCount) {
+        Set<String> uris = new LinkedHashSet<>();
+        int longest = ranges.stream().mapToInt(List::size).max().orElse(0);
+        for (int rank = 0; rank < longest && uris.size() < trackCount; rank++) {
+            for (List<Track> range : ranges) {
+                if (rank < range.size() && uris.size() < trackCount && range.get(rank).uri() != null) {
+                    uris.add(range.get(rank).uri());
+                }
+            }
+        }
+        return new ArrayList<>(uris);
+    }
+}
@@ -0,0 +1,55 @@
+package com.spotify.dashboard.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+// "Single-flight" for identical GETs: if the same user asks for the same URL while that call is still
+// in progress, they don't send a second request, they just wait for the first one and share its result
+// (e.g. /analytics/genres and /top/artists both wanting top 50 artists at the same time on dashboard load)
+@Component
+public class RequestCoalescer {
+
+    private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder(); // how many callers piggybacked on someone else's call
+
+    // the same url always decodes into the same type, so sharing the future between callers of one url is type safe
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String accessToken, String url, Supplier<CompletableFuture<T>> call) {
+        String key = TokenHashes.of(accessToken) + " " + url; // hashed token + url, so different users never share results
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) { // someone's already fetching this, so wait for theirs
+            coalesced.increment();
+            return existing.copy(); // a copy, so one caller cancelling doesn't cancel it for everyone else
+        }
+
+        CompletableFuture<T> upstream;
+        try {
+            upstream = call.get();
+        } catch (RuntimeException e) {
+            upstream = CompletableFuture.failedFuture(e);
+        }
+        upstream.whenComplete((result, error) -> {
+            inFlight.remove(key, mine); // done either way, so the next call goes upstream again
+            if (error != null) {
+                mine.completeExceptionally(error); // every waiter gets the same failure
+            } else {
+                mine.complete(result);
+            }
+        });
+        return mine.copy();
+    }
+
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,149 @@
+package com.spotify.dashboard.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Component;
+
+import com.spotify.dashboard.config.SpotifyResilienceProperties;
+
+// Hedged GETs: if a call is taking longer than (say) 95% of recent calls to the same endpoint took,
+// we send the same request a second time and go with whichever answers first
+// the slow tail is usually one unlucky connection or backend on Spotify's side, the second try rarely hits the same one
+// only for GETs (sending a POST twice would do it twice), and capped at hedge-max-ratio of all calls
+@Component
+public class RequestHedger {
+
+    private static final int WINDOW = 256; // recent latencies kept per endpoint
+
+    // Recent latencies for one endpoint in a ring buffer, the percentile is recomputed every so often (not every call)
+    private static final class LatencyWindow {
+        final long[] samples = new long[WINDOW];
+        int next;
+        int count;
+        long cachedPercentile = -1;
+
+        synchronized void record(long nanos, double percentile) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+            if (next % 16 == 0 || cachedPercentile < 0) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                cachedPercentile = sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+            }
+        }
+
+        synchronized long percentile(int minSamples) {
+            return count >= minSamples ? cachedPercentile : -1;
+        }
+    }
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final double maxRatio;
+    private final int minSamples;
+    private final ConcurrentHashMap<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder(); // the backup answered first
+
+    public RequestHedger(SpotifyResilienceProperties props) {
+        this.enabled = props.isHedgingEnabled();
+        this.percentile = props.getHedgePercentile();
+        this.minDelayNanos = props.getHedgeMinDelay().toNanos();
+        this.maxRatio = props.getHedgeMaxRatio();
+        this.minSamples = props.getHedgeMinSamples();
+    }
+
+    // call gets a "sending" check it has to run right before the request actually goes out (i.e. once
+    // OutboundScheduler lets it through), that's where latency is timed from and the hedge timer starts,
+    // so time spent queued behind our own rate limit never counts and a call that's still queued is never hedged
+    // a backup that only gets its turn after the answer is already in gets false back, and shouldn't send anything
+    public <T> CompletableFuture<T> execute(String endpointKey, Function<BooleanSupplier, CompletableFuture<T>> call) {
+        LatencyWindow window = windows.computeIfAbsent(endpointKey, key -> new LatencyWindow());
+        calls.increment();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        attempt(call, window, result, running, false);
+        return result;
+    }
+
+    // once the original call is actually out: if it's taking longer than the threshold, send the backup
+    private <T> void scheduleHedge(Function<BooleanSupplier, CompletableFuture<T>> call, LatencyWindow window,
+                                   CompletableFuture<T> result, AtomicInteger running) {
+        long threshold = window.percentile(minSamples);
+        if (!enabled || threshold < 0) {
+            return;
+        }
+        long delay = Math.max(threshold, minDelayNanos);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            // still waiting, and we're not over the hedge budget -> send the backup
+            if (result.isDone() || hedges.sum() >= maxRatio * calls.sum()) {
+                return;
+            }
+            running.incrementAndGet();
+            hedges.increment();
+            attempt(call, window, result, running, true);
+        });
+    }
+
+    // first success wins, a failure only counts once no other attempt is still running
+    private <T> void attempt(Function<BooleanSupplier, CompletableFuture<T>> call, LatencyWindow window,
+                             CompletableFuture<T> result, AtomicInteger running, boolean hedge) {
+        AtomicLong sentAt = new AtomicLong(-1); // nanoTime it went out, reset on every retry so we time the last one
+        BooleanSupplier sending = () -> {
+            if (hedge && result.isDone()) {
+                return false; // the original answered while the backup was still queued
+            }
+            if (sentAt.getAndSet(System.nanoTime()) < 0 && !hedge) {
+                scheduleHedge(call, window, result, running);
+            }
+            return true;
+        };
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(sending);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                long sent = sentAt.get();
+                if (sent >= 0) { // -1 = a backup that never went out
+                    window.record(System.nanoTime() - sent, percentile);
+                }
+                if (result.complete(value) && hedge) {
+                    hedgeWins.increment();
+                }
+            } else if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    public long hedgeCount() { return hedges.sum(); }
+    public long hedgeWinCount() { return hedgeWins.sum(); }
+
+    // current hedge threshold per endpoint in ms (-1 = not enough samples yet)
+    public Map<String, Double> thresholdsMillis() {
+        Map<String, Double> thresholds = new TreeMap<>();
+        windows.forEach((key, window) -> {
+            long nanos = window.percentile(minSamples);
+            thresholds.put(key, nanos < 0 ? -1.0 : Math.round(nanos / 1e4) / 100.0);
+        });
+        return thresholds;
+    }
+}
@@ -0,0 +1,30 @@
+package com.spotify.dashboard.service;
+
+import java.util.function.Supplier;
+
+// Who's waiting on a Spotify call: a user looking at the dashboard (INTERACTIVE, the default),
+// or nobody in particular, like prefetching or cache refreshes (BACKGROUND)
+// background calls only go out when no interactive ones are queued (see OutboundScheduler)
+public enum RequestPriority {
+    INTERACTIVE,
+    BACKGROUND;
+
+    // SpotifyApiService reads this when it queues a call, which happens right away on the calling thread,
+    // so wrapping the service call is enough (follow-up calls chained with thenCompose go out as INTERACTIVE)
+    private static final ThreadLocal<RequestPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+    public static RequestPriority current() {
+        return CURRENT.get();
+    }
+
+    // Runs the given Spotify call(s) as background work
+    public static <T> T background(Supplier<T> work) {
+        RequestPriority previous = CURRENT.get();
+        CURRENT.set(BACKGROUND);
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.spotify.dashboard.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.spotify.dashboard.config.SpotifyHistoryProperties;
+
+// Append-only, on-disk store of top tracks / artists / genres snapshots, so we can show how they change over months
+// Two files in spotify.history.directory:
+// - dictionary.bin: every string we've seen (user IDs, track/artist IDs and names, genres) once, in order of first use.
+//   A string's position in that file is its code, so a snapshot is just a list of ints
+// - snapshots.bin: one record per snapshot, [length][user][taken at][kind][time range][count] then count pairs of ints:
+//   (id, name) for tracks/artists, (genre, weighted share in hundredths of a percent) for genres
+//   a 50 track snapshot is 420 bytes, a user with daily snapshots of everything adds ~1.2 MB a year
+// both files are only ever appended to. On startup we read them back and build an index
+// (user -> their records' offset, time, kind, range), the records themselves stay in the file and are read
+// through memory maps of 64 MB segments when someone asks. A half-written record at the end (crash mid-write) is cut off on load
+// appends aren't fsynced one by one, the OS flushes them, losing the last few snapshots in a power cut is fine here
+@Component
+public class SnapshotStore implements AutoCloseable {
+
+    public enum Kind { TRACKS, ARTISTS, GENRES } // stored by position, only ever add to the end
+
+    public record Item(String key, String label, int value) {
+    }
+
+    public record Snapshot(long takenAt, List<Item> items) {
+    }
+
+    private record RecordRef(long offset, long takenAt, byte kind, byte timeRange, int count) {
+    }
+
+    private static final int MAGIC = 0x53504853; // "SPHS"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 8; // magic + version
+    private static final int RECORD_HEADER = 4 + 4 + 8 + 1 + 1 + 2; // length, user, taken at, kind, range, count
+    private static final int MAX_STRING_BYTES = 0xFFFF; // dictionary entries are length-prefixed with an unsigned short
+    private static final int MAX_RECORD = RECORD_HEADER + 0xFFFF * 8; // count is an unsigned short too
+    private static final int SEGMENT_BYTES = 64 << 20;
+
+    private final FileChannel dictionaryFile;
+    private final FileChannel snapshotFile;
+
+    // everything below is guarded by this
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final Map<Integer, List<RecordRef>> byUser = new HashMap<>();
+    // read-only views of snapshots.bin, segment i starts at i * segmentBytes. Only the last one grows, so only it gets re-mapped
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final int segmentBytes;
+    private long dictionaryEnd;
+    private long snapshotEnd;
+    private long recordCount;
+
+    @Autowired
+    public SnapshotStore(SpotifyHistoryProperties props) {
+        this(Path.of(props.getDirectory()));
+    }
+
+    SnapshotStore(Path directory) {
+        this(directory, SEGMENT_BYTES);
+    }
+
+    SnapshotStore(Path directory, int segmentBytes) {
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            this.dictionaryFile = FileChannel.open(directory.resolve("dictionary.bin"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.snapshotFile = FileChannel.open(directory.resolve("snapshots.bin"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open snapshot store in " + directory, e);
+        }
+    }
+
+    // Adds one snapshot. timeRange is the position in GenreAnalyticsEngine.TIME_RANGES
+    public synchronized void append(String userId, Kind kind, int timeRange, long takenAt, List<Item> items) {
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        ByteArrayOutputStream newStrings = new ByteArrayOutputStream();
+        int user = code(userId, pending, newStrings);
+        int count = Math.min(items.size(), Short.MAX_VALUE);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + count * 8);
+        record.putInt(record.capacity() - 4).putInt(user).putLong(takenAt)
+            .put((byte) kind.ordinal()).put((byte) timeRange).putShort((short) count);
+        for (Item item : items.subList(0, count)) {
+            record.putInt(code(item.key(), pending, newStrings));
+            record.putInt(kind == Kind.GENRES ? item.value() : code(item.label() == null ? "" : item.label(), pending, newStrings));
+        }
+        try {
+            // new strings go in first, so a record never points at a code that isn't on disk
+            dictionaryEnd += writeFully(dictionaryFile, ByteBuffer.wrap(newStrings.toByteArray()), dictionaryEnd);
+            // only now do they get their codes for good, if that write failed the next append hands the same codes out again
+            pending.forEach((value, code) -> {
+                strings.add(value);
+                codes.put(value, code);
+            });
+            long offset = snapshotEnd;
+            snapshotEnd += writeFully(snapshotFile, record.flip(), offset);
+            index(new RecordRef(offset, takenAt, (byte) kind.ordinal(), (byte) timeRange, count), user);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Writing snapshot failed", e);
+        }
+    }
+
+    // When the newest snapshot of this kind was taken, -1 if there's none
+    public synchronized long lastTakenAt(String userId, Kind kind, int timeRange) {
+        Integer user = codes.get(userId);
+        List<RecordRef> refs = user == null ? null : byUser.get(user);
+        if (refs == null) {
+            return -1;
+        }
+        for (int i = refs.size() - 1; i >= 0; i--) {
+            RecordRef ref = refs.get(i);
+            if (ref.kind() == kind.ordinal() && ref.timeRange() == timeRange) {
+                return ref.takenAt();
+            }
+        }
+        return -1;
+    }
+
+    // This user's snapshots of one kind and range taken in [from, to], oldest first
+    public synchronized List<Snapshot> snapshots(String userId, Kind kind, int timeRange, long from, long to) {
+        Integer user = codes.get(userId);
+        List<RecordRef> refs = user == null ? null : byUser.get(user);
+        List<Snapshot> snapshots = new ArrayList<>();
+        if (refs == null) {
+            return snapshots;
+        }
+        // refs are sorted by time, so jump straight to the first one in the window
+        int first = firstAtOrAfter(refs, from);
+        for (int i = first; i < refs.size() && refs.get(i).takenAt() <= to; i++) {
+            RecordRef ref = refs.get(i);
+            if (ref.kind() == kind.ordinal() && ref.timeRange() == timeRange) {
+                snapshots.add(read(ref, kind));
+            }
+        }
+        return snapshots;
+    }
+
+    private Snapshot read(RecordRef ref, Kind kind) {
+        MappedByteBuffer map;
+        try {
+            map = segment(ref.offset(), ref.offset() + RECORD_HEADER + ref.count() * 8L, snapshotEnd);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Mapping snapshot file failed", e);
+        }
+        List<Item> items = new ArrayList<>(ref.count());
+        int position = inSegment(ref.offset()) + RECORD_HEADER;
+        for (int i = 0; i < ref.count(); i++, position += 8) {
+            String key = strings.get(map.getInt(position));
+            int second = map.getInt(position + 4);
+            items.add(kind == Kind.GENRES ? new Item(key, null, second) : new Item(key, strings.get(second), 0));
+        }
+        return new Snapshot(ref.takenAt(), items);
+    }
+
+    // caller holds the lock. The segment the record at offset starts in, mapped at least up to end
+    // each one maps a record's worth past its own end, so a record that starts in it never has to be read from two maps
+    private MappedByteBuffer segment(long offset, long end, long fileEnd) throws IOException {
+        int index = (int) (offset / segmentBytes);
+        long start = (long) index * segmentBytes;
+        while (segments.size() <= index) {
+            segments.add(null);
+        }
+        MappedByteBuffer map = segments.get(index);
+        if (map == null || start + map.capacity() < end) {
+            map = snapshotFile.map(FileChannel.MapMode.READ_ONLY, start, Math.min(fileEnd, start + segmentBytes + MAX_RECORD) - start);
+            segments.set(index, map);
+        }
+        return map;
+    }
+
+    private int inSegment(long offset) {
+        return (int) (offset % segmentBytes);
+    }
+
+    private static int firstAtOrAfter(List<RecordRef> refs, long from) {
+        int low = 0;
+        int high = refs.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (refs.get(mid).takenAt() < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // caller holds the lock. Looks up a string's code. A new one gets the next free code and is queued for disk,
+    // it stays in pending until append has written it
+    private int code(String value, Map<String, Integer> pending, ByteArrayOutputStream newStrings) {
+        Integer existing = codes.get(value);
+        if (existing == null) {
+            existing = pending.get(value);
+        }
+        if (existing != null) {
+            return existing;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) { // no real ID or name gets anywhere near this, 3 bytes per char at most
+            return code(value.substring(0, MAX_STRING_BYTES / 3), pending, newStrings);
+        }
+        newStrings.write(bytes.length >>> 8);
+        newStrings.write(bytes.length);
+        newStrings.write(bytes, 0, bytes.length);
+        int code = strings.size() + pending.size();
+        pending.put(value, code);
+        return code;
+    }
+
+    // caller holds the lock
+    private void index(RecordRef ref, int user) {
+        List<RecordRef> refs = byUser.computeIfAbsent(user, key -> new ArrayList<>());
+        refs.add(ref);
+        if (refs.size() > 1 && refs.get(refs.size() - 2).takenAt() > ref.takenAt()) {
+            refs.sort(Comparator.comparingLong(RecordRef::takenAt)); // clock went backwards, rare enough to just sort
+        }
+        recordCount++;
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    // Reads both files back in, dropping anything after the last complete entry
+    private void load() throws IOException {
+        dictionaryEnd = startFile(dictionaryFile);
+        long size = dictionaryFile.size();
+        long position = dictionaryEnd;
+        // read front to back, not closed since that would close the channel too
+        DataInputStream dictionary = new DataInputStream(new BufferedInputStream(Channels.newInputStream(dictionaryFile.position(position)), 1 << 16));
+        while (position + 2 <= size) {
+            int length = dictionary.readUnsignedShort();
+            if (position + 2 + length > size) {
+                break;
+            }
+            byte[] bytes = dictionary.readNBytes(length);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            codes.put(value, strings.size());
+            strings.add(value);
+            position += 2 + length;
+        }
+        dictionaryEnd = position;
+        dictionaryFile.truncate(dictionaryEnd);
+
+        snapshotEnd = startFile(snapshotFile);
+        size = snapshotFile.size();
+        position = snapshotEnd;
+        while (position + RECORD_HEADER <= size) {
+            MappedByteBuffer snapshots = segment(position, position + RECORD_HEADER, size);
+            int at = inSegment(position);
+            int length = snapshots.getInt(at);
+            int user = snapshots.getInt(at + 4);
+            long takenAt = snapshots.getLong(at + 8);
+            byte kind = snapshots.get(at + 16);
+            byte timeRange = snapshots.get(at + 17);
+            int count = Short.toUnsignedInt(snapshots.getShort(at + 18));
+            if (length != RECORD_HEADER - 4 + count * 8 || position + 4 + length > size
+                || user >= strings.size() || kind < 0 || kind >= Kind.values().length
+                || !codesKnown(segment(position, position + 4 + length, size), at + RECORD_HEADER, count, kind == Kind.GENRES.ordinal())) {
+                break; // torn write at the end (or the OS flushed this record but not the strings it uses)
+            }
+            index(new RecordRef(position, takenAt, kind, timeRange, count), user);
+            position += 4 + length;
+        }
+        snapshotEnd = position;
+        if (snapshotEnd < size) {
+            segments.clear(); // they might reach into what's cut off, the next read maps again
+            snapshotFile.truncate(snapshotEnd);
+        }
+    }
+
+    private boolean codesKnown(MappedByteBuffer snapshots, int position, int count, boolean genres) {
+        for (int i = 0; i < count; i++, position += 8) {
+            int key = snapshots.getInt(position);
+            int second = snapshots.getInt(position + 4);
+            if (key < 0 || key >= strings.size() || (!genres && (second < 0 || second >= strings.size()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // writes the header into a new file, checks it on an existing one. Returns where the entries start
+    private static long startFile(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        if (channel.size() < FILE_HEADER) {
+            channel.truncate(0);
+            writeFully(channel, header.putInt(MAGIC).putInt(VERSION).flip(), 0);
+            return FILE_HEADER;
+        }
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a snapshot file (or a newer version of one)");
+        }
+        return FILE_HEADER;
+    }
+
+    public synchronized int userCount() { return byUser.size(); }
+    public synchronized long recordCount() { return recordCount; }
+    public synchronized int dictionarySize() { return strings.size(); }
+    public synchronized long bytesOnDisk() { return dictionaryEnd + snapshotEnd; }
+
+    @Override
+    public synchronized void close() throws IOException {
+        dictionaryFile.force(false);
+        snapshotFile.force(false);
+        dictionaryFile.close();
+        snapshotFile.close();
+    }
+}
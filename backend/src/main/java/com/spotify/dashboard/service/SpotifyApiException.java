@@ -0,0 +1,48 @@
+package com.spotify.dashboard.service;
+
+// A Spotify call that failed, with the HTTP status when there was one
+// status 0 means we never got an answer (connection refused, timeout, ...)
+// the message keeps the old "API request failed: ..." format the frontend already shows
+// overloaded() is for when the call never left our side because we're saturated (queue or permit wait timed out),
+// it answers 503 like a Spotify outage but says nothing about Spotify's health, so the circuit breakers ignore it
+public class SpotifyApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final long retryAfterSeconds; // from the Retry-After header on 429s, -1 if Spotify didn't send one
+    private final boolean localOverload;
+
+    private SpotifyApiException(int status, String detail, long retryAfterSeconds, boolean localOverload) {
+        super("API request failed: " + detail);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.localOverload = localOverload;
+    }
+
+    public SpotifyApiException(int status, String detail, long retryAfterSeconds) {
+        this(status, detail, retryAfterSeconds, false);
+    }
+
+    public SpotifyApiException(int status, String detail) {
+        this(status, detail, -1);
+    }
+
+    public static SpotifyApiException overloaded(String detail) {
+        return new SpotifyApiException(503, detail, -1, true);
+    }
+
+    public int getStatus() { return status; }
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+
+    public boolean isLocalOverload() { return localOverload; }
+
+    public boolean isRateLimited() {
+        return status == 429;
+    }
+
+    // worth trying again: Spotify had a problem on their side, or we never reached it
+    public boolean isServerOrNetworkError() {
+        return status == 0 || status >= 500;
+    }
+}
@@ -1,28 +1,85 @@
 package com.spotify.dashboard.service;
 
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.Artists;
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+import com.spotify.dashboard.model.UserProfile;
+
+import io.micrometer.observation.Observation;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 public class SpotifyApiService {
 
-    private final RestTemplate restTemplate;
+    private final CloseableHttpAsyncClient httpClient;
     private final String spotifyApiBaseUrl;
+    private final SpotifyResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final OutboundScheduler outboundScheduler;
+    private final EndpointCircuitBreakers circuitBreakers;
+    private final RequestHedger requestHedger;
+    private final SpotifyTokenStore tokenStore;
+    private final SpotifyClientMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final Executor spotifyExecutor;
+
+    // Pre-built JSON readers, one per response type
+    // the typed ones only pick out the fields our records have, everything else (available_markets,
+    // album artists, extra image sizes, ...) gets skipped token by token without building any objects
+    private final ObjectReader mapReader;
+    private final ObjectReader userReader;
+    private final ObjectReader trackPageReader;
+    private final ObjectReader artistPageReader;
+    private final ObjectReader artistsReader;
 
-    // injects dependencies, and we input the restTemplate for all reqs, and the base url (https://api.spotify.com/v1)
-    public SpotifyApiService(RestTemplate restTemplate, @Value("${spotify.api.base-url}") String spotifyApiBaseUrl) {
-        this.restTemplate = restTemplate;
+    // injects dependencies, and we input the async client for all reqs, and the base url (https://api.spotify.com/v1)
+    public SpotifyApiService(CloseableHttpAsyncClient spotifyAsyncHttpClient, @Value("${spotify.api.base-url}") String spotifyApiBaseUrl,
+                             SpotifyResponseCache responseCache, RequestCoalescer requestCoalescer,
+                             OutboundScheduler outboundScheduler, EndpointCircuitBreakers circuitBreakers,
+                             RequestHedger requestHedger, SpotifyTokenStore tokenStore,
+                             SpotifyClientMetrics metrics, ObjectMapper objectMapper,
+                             @Qualifier("spotifyExecutor") Executor spotifyExecutor) {
+        this.httpClient = spotifyAsyncHttpClient;
         this.spotifyApiBaseUrl = spotifyApiBaseUrl;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.outboundScheduler = outboundScheduler;
+        this.circuitBreakers = circuitBreakers;
+        this.requestHedger = requestHedger;
+        this.tokenStore = tokenStore;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.spotifyExecutor = spotifyExecutor;
+        this.mapReader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {});
+        this.userReader = objectMapper.readerFor(UserProfile.class);
+        this.trackPageReader = objectMapper.readerFor(new TypeReference<Paging<Track>>() {});
+        this.artistPageReader = objectMapper.readerFor(new TypeReference<Paging<Artist>>() {});
+        this.artistsReader = objectMapper.readerFor(Artists.class);
     }
 
-    private HttpHeaders createHeaders(String accessToken) {
+    // package-private and static for the benchmarks (src/jmh)
+    static HttpHeaders createHeaders(String accessToken) {
     // attach user's OAuth access token to every request (server will validate scopes)
     HttpHeaders headers = new HttpHeaders();
     headers.set("Authorization", "Bearer " + accessToken);
@@ -32,43 +89,132 @@ public class SpotifyApiService {
 }
 
     // Template that we use throughout the queries/tasks specifically for get requests
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> makeGetRequest(String endpoint, String accessToken) {
-        // HttpEntity is a Spring container for an HTTP req or response, to hold a body and headers together
-        // sort of like an envelope that wraps the headers and optional body so RestTemplate knows what to send
+    // identical GETs from the same user that overlap in time are sent once and shared (see RequestCoalescer)
+    // reader decides what the JSON turns into (a typed record, or a plain Map for the endpoints we don't model)
+    private <T> CompletableFuture<T> makeGetRequest(String endpoint, String accessToken, ObjectReader reader) {
+        String url = spotifyApiBaseUrl + endpoint;
+        return requestCoalescer.execute(accessToken, url, () -> send(SimpleRequestBuilder.get(url), endpoint, accessToken, null, reader));
+    }
+
+    // Template that we use throughout the API calls specifically for post requests
+    // Only difference is that makePostRequest sends a payload (body) as JSON
+    private CompletableFuture<Map<String, Object>> makePostRequest(String endpoint, String accessToken, Object body) {
+        return send(SimpleRequestBuilder.post(spotifyApiBaseUrl + endpoint), endpoint, accessToken, body, mapReader);
+    }
+
+    // Sends the request without blocking anyone: the future completes once Spotify answers
+    // (or fails with a SpotifyApiException for HTTP and network errors, RuntimeException for anything else)
+    // OutboundScheduler decides when it actually goes out (rate limit, per-user turns, retries),
+    // wrapped in the endpoint's circuit breaker, and GETs that are taking unusually long get hedged (see RequestHedger)
+    private <T> CompletableFuture<T> send(SimpleRequestBuilder builder, String endpoint, String accessToken, Object body, ObjectReader reader) {
         try {
-            HttpEntity<String> entity = new HttpEntity<>(createHeaders(accessToken)); // no body, so empty-body req with headers
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange( 
-                spotifyApiBaseUrl + endpoint,
-                HttpMethod.GET,
-                entity,
-                (Class<Map<String, Object>>) (Class<?>) Map.class
-            );
-            // spotifyApiBaseUrl + endpoint sets up https://api.spotify.com/v1/me/top/tracks?, 
-            // from there, we call the get request (HttpMethod.GET), headers (entity), 
-            // tell the RestTemplate to deserialize the JSON response to a map ((Class<Map<String, Object>>) (Class<?>) Map.class)
-            return response.getBody(); // from there, it's now in Map<String, Object> format instead of in JSON 
+            // the browser's token is just a handle, Spotify gets the user's current (refreshed) one, see SpotifyTokenStore
+            // everything else (cache, coalescing, scheduling) keeps using the browser's token so its keys don't change
+            createHeaders(tokenStore.upstreamToken(accessToken)).forEach((name, values) -> values.forEach(value -> builder.addHeader(name, value)));
+            if (body != null) {
+                builder.setBody(objectMapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON);
+            }
         } catch (Exception e) {
-            throw new RuntimeException("API request failed: " + e.getMessage()); // catches HTTP errors, network, deserialization errors, etc 
+            return CompletableFuture.failedFuture(new RuntimeException("API request failed: " + e.getMessage()));
+        }
+        SimpleHttpRequest request = builder.build();
+        boolean idempotent = body == null; // only GETs are safe to send twice (a POST might have gone through)
+        String userKey = TokenHashes.of(accessToken);
+        RequestPriority priority = RequestPriority.current(); // read it now, the hedge fires on another thread
+        String endpointKey = EndpointCircuitBreakers.endpointKey(endpoint);
+        Observation parent = metrics.current(); // same idea, the call itself starts later on another thread
+        if (!idempotent) {
+            return circuitBreakers.execute(endpointKey, () -> outboundScheduler.submit(userKey, priority, false,
+                () -> execute(request, reader, endpointKey, parent)));
         }
+        // the hedger times the call from when the scheduler lets it out, not from when it was queued
+        return circuitBreakers.execute(endpointKey, () -> requestHedger.execute(endpointKey, sending ->
+            outboundScheduler.submit(userKey, priority, true, () -> sending.getAsBoolean()
+                ? execute(request, reader, endpointKey, parent)
+                : CompletableFuture.<T>completedFuture(null)))); // backup whose original already answered, skip it
     }
 
-    // Template that we use throughout the API calls specifically for post requests
-    // Same comments as before basically
-    // Only difference is that makePostRequest a payload (body) and uses HttpMethod.POST
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> makePostRequest(String endpoint, String accessToken, Object body) {
+    // one attempt: timed from sending to decoded (see SpotifyClientMetrics), one observation per retry/hedge
+    private <T> CompletableFuture<T> execute(SimpleHttpRequest request, ObjectReader reader, String endpointKey, Observation parent) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Observation observation = metrics.start(endpointKey, request.getMethod(), request.getRequestUri(), parent);
+        httpClient.execute(request, new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                Runnable handle = () -> {
+                    try {
+                        future.complete(decode(response, reader));
+                        metrics.stop(observation, endpointKey, response.getCode(), null);
+                    } catch (SpotifyApiException e) {
+                        metrics.stop(observation, endpointKey, response.getCode(), e);
+                        future.completeExceptionally(e);
+                    } catch (Exception e) {
+                        metrics.stop(observation, endpointKey, response.getCode(), e);
+                        future.completeExceptionally(new RuntimeException("API request failed: " + e.getMessage()));
+                    }
+                };
+                // decode on the spotify executor, so the client's I/O threads go right back to reading sockets
+                // if its threads and queue are all full we decode right here instead: Spotify already answered
+                // (a POST may have gone through), and dropping it would leave the future, the concurrency permit
+                // and the metrics observation hanging forever
+                try {
+                    spotifyExecutor.execute(handle);
+                } catch (RejectedExecutionException e) {
+                    handle.run();
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                metrics.stop(observation, endpointKey, 0, e);
+                future.completeExceptionally(new SpotifyApiException(0, String.valueOf(e.getMessage()))); // never got an answer
+            }
+
+            @Override
+            public void cancelled() {
+                metrics.stop(observation, endpointKey, 0, null);
+                future.completeExceptionally(new SpotifyApiException(0, "request cancelled"));
+            }
+        });
+        return future;
+    }
+
+    // Turns the JSON response into whatever the reader is for, anything that isn't a 2xx becomes an error
+    private <T> T decode(SimpleHttpResponse response, ObjectReader reader) throws Exception {
+        int status = response.getCode();
+        byte[] bytes = response.getBodyBytes();
+        if (status < 200 || status >= 300) {
+            String bodyText = bytes == null ? "" : new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+            throw new SpotifyApiException(status, status + " " + response.getReasonPhrase() + ": " + bodyText, retryAfterSeconds(response));
+        }
+        if (bytes == null || bytes.length == 0) {
+            return reader.readValue("{}"); // some endpoints answer with an empty body
+        }
+        return reader.readValue(bytes);
+    }
+
+    // Retry-After on a 429 is a number of seconds (Spotify doesn't use the date form), -1 when missing
+    private static long retryAfterSeconds(SimpleHttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null) {
+            return -1;
+        }
         try {
-            HttpEntity<String> entity = new HttpEntity<>(createHeaders(accessToken));
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
-                spotifyApiBaseUrl + endpoint,
-                HttpMethod.POST,
-                entity,
-                (Class<Map<String, Object>>) (Class<?>) Map.class
-            );
-            return response.getBody();
-        } catch (Exception e) {
-            throw new RuntimeException("API request failed: " + e.getMessage());
+            return Math.max(0, Long.parseLong(header.getValue().trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Sync versions just wait on the async ones, join() wraps failures in CompletionException so we unwrap it
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
     }
 
@@ -76,34 +222,70 @@ public class SpotifyApiService {
     // they're basically provided to us yayayay
     // below are the API call methods that build the speciifc Spotify endpoint/path (and query params if needed),
     // then returns the response parsed from JSON into Map<String, Object> for easy accessibility
+    // each one comes as an async version (returns a CompletableFuture) plus a plain blocking one on top of it
+
+    // profile and top items go through the response cache first, Spotify only gets called on a miss
+    // these three come back as typed records (see the model package) instead of Maps, since they're the hot ones
+    public CompletableFuture<UserProfile> getCurrentUserAsync(String accessToken) {
+        return responseCache.get(accessToken, SpotifyResponseCache.PROFILE, null, 0, 0,
+            () -> makeGetRequest("/me", accessToken, userReader));
+    }
+
+    public UserProfile getCurrentUser(String accessToken) {
+        return await(getCurrentUserAsync(accessToken));
+    }
 
-    public Map<String, Object> getCurrentUser(String accessToken) {
-        return makeGetRequest("/me", accessToken);
+    public CompletableFuture<Paging<Track>> getTopTracksAsync(String accessToken, String timeRange, int limit) {
+        return getTopTracksAsync(accessToken, timeRange, limit, 0);
     }
 
-    public Map<String, Object> getTopTracks(String accessToken, String timeRange, int limit) {
-        String endpoint = "/me/top/tracks?time_range=" + timeRange + "&limit=" + limit;
-        return makeGetRequest(endpoint, accessToken);
+    // offset = where the page starts, for going past the first 50 (e.g. offset 50 = tracks #51-#100)
+    public CompletableFuture<Paging<Track>> getTopTracksAsync(String accessToken, String timeRange, int limit, int offset) {
+        String endpoint = "/me/top/tracks?time_range=" + timeRange + "&limit=" + limit + (offset > 0 ? "&offset=" + offset : "");
+        return responseCache.get(accessToken, SpotifyResponseCache.TOP_TRACKS, timeRange, limit, offset,
+            () -> makeGetRequest(endpoint, accessToken, trackPageReader));
     }
 
-    public Map<String, Object> getTopArtists(String accessToken, String timeRange, int limit) {
+    public Paging<Track> getTopTracks(String accessToken, String timeRange, int limit) {
+        return await(getTopTracksAsync(accessToken, timeRange, limit));
+    }
+
+    public CompletableFuture<Paging<Artist>> getTopArtistsAsync(String accessToken, String timeRange, int limit) {
         String endpoint = "/me/top/artists?time_range=" + timeRange + "&limit=" + limit;
-        return makeGetRequest(endpoint, accessToken);
+        return responseCache.get(accessToken, SpotifyResponseCache.TOP_ARTISTS, timeRange, limit, 0,
+            () -> makeGetRequest(endpoint, accessToken, artistPageReader));
     }
 
-    public Map<String, Object> getArtists(String accessToken, java.util.List<String> artistIds) {
+    public Paging<Artist> getTopArtists(String accessToken, String timeRange, int limit) {
+        return await(getTopArtistsAsync(accessToken, timeRange, limit));
+    }
+
+    // Spotify takes up to 50 ids per call, ArtistCatalog does the chunking (and caching) so go through that normally
+    public CompletableFuture<Artists> getArtistsAsync(String accessToken, java.util.List<String> artistIds) {
         String ids = String.join(",", artistIds);
         String endpoint = "/artists?ids=" + ids;
-        return makeGetRequest(endpoint, accessToken);
+        return makeGetRequest(endpoint, accessToken, artistsReader);
     }
 
-    public Map<String, Object> createPlaylist(String accessToken, String userId, Map<String, Object> playlistData) {
+    public Artists getArtists(String accessToken, java.util.List<String> artistIds) {
+        return await(getArtistsAsync(accessToken, artistIds));
+    }
+
+    public CompletableFuture<Map<String, Object>> createPlaylistAsync(String accessToken, String userId, Map<String, Object> playlistData) {
         String endpoint = "/users/" + userId + "/playlists";
         return makePostRequest(endpoint, accessToken, playlistData);
     }
 
-    public Map<String, Object> addTracksToPlaylist(String accessToken, String playlistId, Map<String, Object> tracksData) {
+    public Map<String, Object> createPlaylist(String accessToken, String userId, Map<String, Object> playlistData) {
+        return await(createPlaylistAsync(accessToken, userId, playlistData));
+    }
+
+    public CompletableFuture<Map<String, Object>> addTracksToPlaylistAsync(String accessToken, String playlistId, Map<String, Object> tracksData) {
         String endpoint = "/playlists/" + playlistId + "/tracks";
         return makePostRequest(endpoint, accessToken, tracksData);
     }
-}
\ No newline at end of file
+
+    public Map<String, Object> addTracksToPlaylist(String accessToken, String playlistId, Map<String, Object> tracksData) {
+        return await(addTracksToPlaylistAsync(accessToken, playlistId, tracksData));
+    }
+}
@@ -0,0 +1,95 @@
+package com.spotify.dashboard.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import com.spotify.dashboard.config.OutboundConcurrencyLimiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+// Metrics (and, with tracing on, spans) for every HTTP call we make to Spotify
+// - spotify.client.requests: timer per endpoint ("/me/top/tracks", "/playlists/{id}/tracks", ...), method, status, outcome.
+//   one per attempt, so retries and hedges show up as separate calls. Covers sending + decoding, not the time queued
+// - spotify.client.errors: counter of failed calls by endpoint and status (429, 502, IO_ERROR, ...)
+// - spotify.client.in.flight / spotify.client.queued / spotify.client.permits.available: gauges
+// incoming requests are timed by Spring itself (http.server.requests). The upstream observation is a child of the
+// request that caused it, so a trace shows one dashboard load and the Spotify calls it fanned out to
+@Component
+public class SpotifyClientMetrics {
+
+    private static final String REQUESTS = "spotify.client.requests";
+
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public SpotifyClientMetrics(ObservationRegistry observationRegistry, MeterRegistry meterRegistry,
+                                OutboundScheduler outboundScheduler, OutboundConcurrencyLimiter outboundConcurrencyLimiter) {
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("spotify.client.in.flight", inFlight, AtomicInteger::get)
+            .description("Spotify calls sent and not answered yet").register(meterRegistry);
+        for (RequestPriority priority : RequestPriority.values()) {
+            Gauge.builder("spotify.client.queued", outboundScheduler, scheduler -> scheduler.queueDepth(priority))
+                .tag("priority", priority.name().toLowerCase())
+                .description("Spotify calls waiting in the outbound scheduler").register(meterRegistry);
+        }
+        Gauge.builder("spotify.client.permits.available", outboundConcurrencyLimiter, OutboundConcurrencyLimiter::available)
+            .description("Free slots in the outbound concurrency limiter").register(meterRegistry);
+    }
+
+    // The observation of whatever we're doing right now (usually the incoming HTTP request), read on the calling
+    // thread so the upstream call can hang off it even though it starts later on another one
+    public Observation current() {
+        return observationRegistry.getCurrentObservation();
+    }
+
+    public Observation start(String endpointKey, String method, String url, Observation parent) {
+        inFlight.incrementAndGet();
+        return Observation.createNotStarted(REQUESTS, observationRegistry)
+            .parentObservation(parent)
+            .contextualName(method + " " + endpointKey)
+            .lowCardinalityKeyValue("endpoint", endpointKey)
+            .lowCardinalityKeyValue("method", method)
+            .highCardinalityKeyValue("http.url", url) // span attribute only, too many values for a metric tag
+            .start();
+    }
+
+    // status 0 = no answer (connection refused, timeout, ...)
+    public void stop(Observation observation, String endpointKey, int status, Throwable error) {
+        inFlight.decrementAndGet();
+        String statusTag = status == 0 ? "IO_ERROR" : String.valueOf(status);
+        observation.lowCardinalityKeyValue("status", statusTag);
+        observation.lowCardinalityKeyValue("outcome", outcome(status));
+        if (error != null) {
+            observation.error(error);
+        }
+        if (status == 0 || status >= 400) {
+            Counter.builder("spotify.client.errors")
+                .tag("endpoint", endpointKey)
+                .tag("status", statusTag)
+                .description("Failed Spotify calls")
+                .register(meterRegistry)
+                .increment();
+        }
+        observation.stop();
+    }
+
+    private static String outcome(int status) {
+        if (status >= 200 && status < 300) {
+            return "SUCCESS";
+        }
+        if (status >= 400 && status < 500) {
+            return "CLIENT_ERROR";
+        }
+        if (status >= 500) {
+            return "SERVER_ERROR";
+        }
+        return status >= 300 && status < 400 ? "REDIRECTION" : "UNKNOWN";
+    }
+}
@@ -0,0 +1,169 @@
+package com.spotify.dashboard.service;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.model.Paging;
+
+// In-memory cache of Spotify responses per user
+// so reloading the dashboard 10 times doesn't mean 10 x 3 calls to Spotify
+// stale-while-revalidate: once a response is older than its TTL we still hand it out right away (for up to stale-ttl),
+// and refresh it in the background, so users don't wait on Spotify (or see errors when it's down) for data we already have
+// (only while Spotify is down or throttling us, a refresh that gets a 401/403 drops the copy)
+@Component
+public class SpotifyResponseCache {
+
+    // What makes an entry unique, userKey is a hash of the token (see TokenHashes), never the raw token
+    public record Key(String userKey, String endpoint, String timeRange, int limit, int offset) {
+    }
+
+    public static final String PROFILE = "me";
+    public static final String TOP_TRACKS = "top-tracks";
+    public static final String TOP_ARTISTS = "top-artists";
+
+    // what's actually stored: the response plus when we got it (nanoTime), to tell fresh from stale
+    private record Entry(Object value, long fetchedAt) {
+    }
+
+    private final boolean enabled;
+    private final Duration profileTtl;
+    private final Duration topItemsTtl;
+    private final long staleNanos;
+    private final Cache<Key, Entry> cache;
+    private final Set<Key> refreshing = ConcurrentHashMap.newKeySet(); // keys with a background refresh in flight
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    public SpotifyResponseCache(SpotifyCacheProperties props) {
+        this.enabled = props.isEnabled();
+        this.profileTtl = props.getProfileTtl();
+        this.topItemsTtl = props.getTopItemsTtl();
+        this.staleNanos = props.getStaleTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(props.getMaximumWeight())
+            .weigher((Key key, Entry entry) -> weigh(entry.value())) // big responses count for more
+            .expireAfter(new Expiry<Key, Entry>() { // profile and top items have their own TTLs, plus the stale window
+                @Override
+                public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+                    return ttl(key) + staleNanos;
+                }
+
+                @Override
+                public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, entry, currentTime); // a fresh value restarts the clock
+                }
+
+                @Override
+                public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+                    return currentDuration; // reading doesn't extend the lifetime
+                }
+            })
+            .recordStats() // hit/miss/eviction counters for the diagnostics endpoint
+            .build();
+    }
+
+    // Returns the cached response, or calls the loader (aka Spotify) and remembers what it returned
+    // We purposely don't use an async Caffeine loader here, concurrent misses are already merged by RequestCoalescer
+    // each endpoint always caches the same type (profile -> UserProfile, top tracks -> Paging<Track> ...), hence the cast
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> get(String accessToken, String endpoint, String timeRange, int limit, int offset,
+                                        Supplier<CompletableFuture<T>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Key key = new Key(TokenHashes.of(accessToken), endpoint, timeRange, limit, offset);
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (System.nanoTime() - cached.fetchedAt() >= ttl(key)) {
+                staleServed.increment();
+                refreshInBackground(key, loader); // stale, serve it anyway and get a new one for next time
+            }
+            return CompletableFuture.completedFuture((T) cached.value());
+        }
+        return loader.get().thenApply(fresh -> {
+            store(key, fresh); // errors fail the future, so only successful responses make it in here
+            return fresh;
+        });
+    }
+
+    // one refresh per key at a time, as background work so it never holds up someone's dashboard
+    // if Spotify is having trouble (5xx, 429, timeout) we keep serving the stale copy until it's past stale-ttl,
+    // but if it turned the request itself down (401/403 = token expired or revoked, ...) the copy is dropped,
+    // so the next read goes to Spotify and fails instead of handing out the user's data for hours
+    private <T> void refreshInBackground(Key key, Supplier<CompletableFuture<T>> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        CompletableFuture<T> refresh;
+        try {
+            refresh = RequestPriority.background(loader);
+        } catch (RuntimeException e) {
+            refresh = CompletableFuture.failedFuture(e);
+        }
+        refresh.whenComplete((fresh, error) -> {
+            refreshing.remove(key);
+            if (error != null) {
+                refreshFailures.increment();
+                if (!isTransient(error)) {
+                    cache.invalidate(key);
+                }
+            } else {
+                store(key, fresh);
+            }
+        });
+    }
+
+    // worth riding out with the stale copy: Spotify's side, rate limits, or our own queue/limiter being full
+    private static boolean isTransient(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return !(cause instanceof SpotifyApiException apiError) || apiError.isServerOrNetworkError() || apiError.isRateLimited();
+    }
+
+    private void store(Key key, Object value) {
+        if (value != null) {
+            cache.put(key, new Entry(value, System.nanoTime()));
+        }
+    }
+
+    private long ttl(Key key) {
+        return (PROFILE.equals(key.endpoint()) ? profileTtl : topItemsTtl).toNanos();
+    }
+
+    public long staleServedCount() {
+        return staleServed.sum();
+    }
+
+    public long refreshFailureCount() {
+        return refreshFailures.sum();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    // what's cached right now, for tests
+    Set<Key> keys() {
+        return Set.copyOf(cache.asMap().keySet());
+    }
+
+    // 1 for the envelope + 1 per item in "items" (so a top 50 response = 51)
+    private static int weigh(Object value) {
+        return 1 + (value instanceof Paging<?> page && page.items() != null ? page.items().size() : 0);
+    }
+}
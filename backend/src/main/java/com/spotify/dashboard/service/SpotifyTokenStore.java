@@ -0,0 +1,258 @@
+package com.spotify.dashboard.service;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.spotify.dashboard.config.SpotifyTokenProperties;
+
+// Keeps every logged in user's Spotify tokens on the server, one session per login
+// before this the callback handed access + refresh token to the browser and forgot about them,
+// so after an hour every request failed until the user logged in again
+// - the browser only gets a random session ID (in an HttpOnly cookie, see SpotifyController), never a Spotify token.
+//   When a request comes in with it, SpotifyApiService swaps in the session's current Spotify token. So the browser
+//   never has to know we refreshed, and the cache/coalescer/scheduler keys (which hash the session ID) stay the same
+// - a session ends session-lifetime after login no matter what, earlier after session-idle-timeout without a request,
+//   or on logout. The session map is keyed by a hash of the ID, like everywhere else. The session itself holds
+//   its ID next to the Spotify tokens (which are just as sensitive), so background jobs can act as that session
+// - a scheduled job refreshes tokens with the refresh_token grant refresh-margin before they expire,
+//   so no request has to wait for a refresh (or get a 401 first)
+// bearer tokens that aren't one of our sessions (API clients with their own Spotify token) just go through as they are
+@Service
+public class SpotifyTokenStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SpotifyTokenStore.class);
+    private static final ParameterizedTypeReference<Map<String, Object>> TOKEN_RESPONSE = new ParameterizedTypeReference<>() {};
+
+    private static final int SESSION_ID_BYTES = 32;
+
+    private static final class Session {
+        final String id; // what the browser's cookie holds, for background jobs (see forEachSession)
+        final String key; // hash of the session ID
+        volatile String userId; // null until identify(), right after login
+        final long endsAt; // nanoTime, session-lifetime after login
+        volatile String accessToken;
+        volatile String refreshToken;
+        volatile long expiresAt; // epoch millis
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Session(String id, String key, long endsAt) {
+            this.id = id;
+            this.key = key;
+            this.endsAt = endsAt;
+        }
+    }
+
+    private final RestTemplate restTemplate;
+    private final SpotifyTokenProperties props;
+    private final String clientId;
+    private final String clientSecret;
+    private final String redirectUri;
+    private final Executor refreshExecutor;
+
+    // hash of the session ID -> session (one per login, the user might be logged in on two devices)
+    private final Cache<String, Session> sessions;
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    public SpotifyTokenStore(RestTemplate restTemplate, SpotifyTokenProperties props,
+                             @Value("${spotify.client-id}") String clientId,
+                             @Value("${spotify.client-secret}") String clientSecret,
+                             @Value("${spotify.redirect-uri}") String redirectUri,
+                             @Qualifier("tokenRefreshExecutor") Executor refreshExecutor) {
+        this.restTemplate = restTemplate;
+        this.props = props;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.redirectUri = redirectUri;
+        this.refreshExecutor = refreshExecutor;
+        long idleNanos = props.getSessionIdleTimeout().toNanos();
+        this.sessions = Caffeine.newBuilder()
+            .expireAfter(new Expiry<String, Session>() { // whichever comes first: idle timeout or the end of its lifetime
+                @Override
+                public long expireAfterCreate(String key, Session session, long currentTime) {
+                    return Math.max(0, Math.min(idleNanos, session.endsAt - currentTime));
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Session session, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+
+                @Override
+                public long expireAfterRead(String key, Session session, long currentTime, long currentDuration) {
+                    return Math.max(0, Math.min(idleNanos, session.endsAt - currentTime)); // a request restarts the idle clock, not the lifetime
+                }
+            })
+            .build();
+    }
+
+    // Trades the auth code from the login redirect for tokens: {access_token, refresh_token, expires_in, ...}
+    public Map<String, Object> exchangeCode(String code) {
+        return requestTokens("grant_type=authorization_code&code=" + encode(code) + "&redirect_uri=" + encode(redirectUri));
+    }
+
+    // Starts a server side session for freshly exchanged tokens, returns the session ID for the browser's cookie
+    // whose tokens they are gets filled in with identify() once /me answered. That call already goes through the session,
+    // so the profile ends up cached (and coalesced) under the session, where the first dashboard request looks for it
+    public String startSession(Map<String, Object> tokenResponse) {
+        byte[] bytes = new byte[SESSION_ID_BYTES];
+        random.nextBytes(bytes);
+        String sessionId = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        String key = TokenHashes.of(sessionId);
+        Session session = new Session(sessionId, key, System.nanoTime() + props.getSessionLifetime().toNanos());
+        update(session, tokenResponse);
+        sessions.put(key, session);
+        return sessionId;
+    }
+
+    public void identify(String sessionId, String userId) {
+        Session session = sessions.getIfPresent(TokenHashes.of(sessionId));
+        if (session != null) {
+            session.userId = userId;
+        }
+    }
+
+    // Logout: the session and its refresh token are gone, the ID stops working right away
+    public void endSession(String sessionId) {
+        sessions.invalidate(TokenHashes.of(sessionId));
+    }
+
+    public boolean isActive(String sessionId) {
+        return sessions.getIfPresent(TokenHashes.of(sessionId)) != null;
+    }
+
+    // The token to actually send to Spotify for a session ID (or bearer token) a request came in with
+    // background work (snapshots, cache refreshes, prefetching) looks the session up without counting as a request,
+    // otherwise the daily snapshot alone would keep an unused session from ever going idle
+    public String upstreamToken(String presentedToken) {
+        String key = TokenHashes.of(presentedToken);
+        Session session = RequestPriority.current() == RequestPriority.BACKGROUND
+            ? sessions.policy().getIfPresentQuietly(key)
+            : sessions.getIfPresent(key);
+        if (session == null) {
+            return presentedToken;
+        }
+        if (System.currentTimeMillis() >= session.expiresAt) {
+            refreshAsync(session); // the scheduled job fell behind somehow, this request still gets the old one
+        }
+        return session.accessToken;
+    }
+
+    // Whose session this is, null if it's not one of ours (or it's over)
+    public String userId(String presentedToken) {
+        Session session = sessions.getIfPresent(TokenHashes.of(presentedToken));
+        return session != null ? session.userId : null;
+    }
+
+    // user ID + session ID for every live session, for background jobs (see ListeningHistory)
+    // they call Spotify with the session ID like a request would, so SpotifyApiService swaps in the current token
+    // and the calls share the session's cache entries, coalescing and fair-queue slot
+    void forEachSession(BiConsumer<String, String> action) {
+        sessions.asMap().values().forEach(session -> {
+            if (session.userId != null) { // still logging in
+                action.accept(session.userId, session.id);
+            }
+        });
+    }
+
+    // Runs every refresh-check-interval and refreshes every token that's about to expire
+    @Scheduled(fixedDelayString = "${spotify.tokens.refresh-check-interval:30s}")
+    public void refreshExpiring() {
+        long due = System.currentTimeMillis() + props.getRefreshMargin().toMillis();
+        // asMap() doesn't count as an access, so this doesn't keep idle sessions alive
+        sessions.asMap().values().forEach(session -> {
+            if (session.expiresAt <= due) {
+                refreshAsync(session);
+            }
+        });
+    }
+
+    private void refreshAsync(Session session) {
+        if (session.refreshToken == null || !session.refreshing.compareAndSet(false, true)) {
+            return; // nothing to refresh with, or already on it
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    update(session, requestTokens("grant_type=refresh_token&refresh_token=" + encode(session.refreshToken)));
+                    refreshes.increment();
+                } catch (HttpClientErrorException e) {
+                    // refresh token revoked or expired (invalid_grant), that session is done, they'll have to log in again
+                    refreshFailures.increment();
+                    sessions.invalidate(session.key);
+                    log.info("Dropping Spotify session for user {}, refresh was rejected with {}", session.userId, e.getStatusCode());
+                } catch (Exception e) {
+                    refreshFailures.increment(); // Spotify down or slow, the next check tries again
+                    log.warn("Refreshing Spotify token for user {} failed: {}", session.userId, e.getMessage());
+                } finally {
+                    session.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // queue's full, let go of the flag so the next check (or request) can try again
+            session.refreshing.set(false);
+            refreshFailures.increment();
+            log.warn("Refreshing Spotify token for user {} skipped, refresh queue is full", session.userId);
+        }
+    }
+
+    private void update(Session session, Map<String, Object> tokenResponse) {
+        Object expiresIn = tokenResponse.get("expires_in");
+        long lifetimeSeconds = expiresIn instanceof Number number ? number.longValue() : 3600;
+        session.accessToken = (String) tokenResponse.get("access_token");
+        if (tokenResponse.get("refresh_token") instanceof String refreshToken) {
+            session.refreshToken = refreshToken; // Spotify sometimes rotates it, otherwise the old one keeps working
+        }
+        session.expiresAt = System.currentTimeMillis() + lifetimeSeconds * 1000;
+    }
+
+    private Map<String, Object> requestTokens(String body) {
+        // Encode client creds for basic auth
+        String credentials = clientId + ":" + clientSecret;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        headers.set(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        return restTemplate.exchange(props.getTokenUrl(), HttpMethod.POST, new HttpEntity<>(body, headers), TOKEN_RESPONSE).getBody();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // for the diagnostics endpoint
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.estimatedSize());
+        stats.put("refreshes", refreshes.sum());
+        stats.put("refresh_failures", refreshFailures.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,25 @@
+package com.spotify.dashboard.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Turns a bearer token into something safe to use as a map key or log
+// we never want the raw token sitting in a cache key (heap dumps, logs, metrics labels, etc)
+public final class TokenHashes {
+
+    private TokenHashes() {
+    }
+
+    // SHA-256 of the token, first 16 bytes as hex is plenty to avoid collisions between users
+    public static String of(String accessToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(accessToken.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // every JVM ships it, so this shouldn't happen
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.spotify.dashboard.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Generated responses shaped like the real /me/top/tracks and /me/top/artists ones, for the benchmarks (src/jmh)
+// and the Spotify stand-in (src/loadtest)
+// same fields, same nesting, ~185 available_markets per track and album, 3 image sizes, 0-6 genres per artist
+// picked from a skewed pool (a few genres everyone has, a long tail) so the aggregation sees realistic overlap
+// seeded, so every run (and the stored baselines) decode the exact same bytes
+public final class SpotifyPayloads {
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final List<String> MARKETS = markets();
+    private static final List<String> GENRES = genres();
+
+    private final Random random;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public SpotifyPayloads(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // a whole page, as /me/top/{tracks,artists}?limit=count answers
+    public byte[] topTracks(int count) {
+        return page(trackItems(count), count, count, 0, "https://api.spotify.com/v1/me/top/tracks");
+    }
+
+    public byte[] topArtists(int count) {
+        return page(artistItems(count), count, count, 0, "https://api.spotify.com/v1/me/top/artists");
+    }
+
+    // the items on their own (one JSON object each), for putting pages together without serializing again
+    public List<byte[]> trackItems(int count) {
+        return items(count, this::track);
+    }
+
+    public List<byte[]> artistItems(int count) {
+        return items(count, index -> artist());
+    }
+
+    // Spotify's paging envelope around already serialized items
+    public static byte[] page(List<byte[]> items, int total, int limit, int offset, String href) {
+        int size = 128 + href.length();
+        for (byte[] item : items) {
+            size += item.length + 1;
+        }
+        ByteArrayOutputStream page = new ByteArrayOutputStream(size);
+        page.writeBytes(utf8("{\"items\":["));
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                page.write(',');
+            }
+            page.writeBytes(items.get(i));
+        }
+        page.writeBytes(utf8("],\"total\":" + total + ",\"limit\":" + limit + ",\"offset\":" + offset
+            + ",\"href\":\"" + href + "?offset=" + offset + "&limit=" + limit + "&time_range=medium_term\""
+            + ",\"next\":null,\"previous\":null}"));
+        return page.toByteArray();
+    }
+
+    // /me
+    public byte[] profile(String userId) {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("country", MARKETS.get(random.nextInt(MARKETS.size())));
+        user.put("display_name", words(2));
+        user.put("email", userId + "@example.com");
+        user.put("explicit_content", Map.of("filter_enabled", false, "filter_locked", false));
+        user.put("external_urls", Map.of("spotify", "https://open.spotify.com/user/" + userId));
+        user.put("followers", Map.of("total", random.nextInt(500)));
+        user.put("href", "https://api.spotify.com/v1/users/" + userId);
+        user.put("id", userId);
+        user.put("images", images().subList(1, 3));
+        user.put("product", "premium");
+        user.put("type", "user");
+        user.put("uri", "spotify:user:" + userId);
+        return json(user);
+    }
+
+    private List<byte[]> items(int count, IntFunction<Map<String, Object>> item) {
+        List<byte[]> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(json(item.apply(i)));
+        }
+        return items;
+    }
+
+    private byte[] json(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Map<String, Object> track(int index) {
+        String id = id();
+        Map<String, Object> album = new LinkedHashMap<>();
+        album.put("album_type", random.nextInt(4) == 0 ? "single" : "album");
+        album.put("artists", List.of(artistRef()));
+        album.put("available_markets", MARKETS);
+        album.put("external_urls", Map.of("spotify", "https://open.spotify.com/album/" + id));
+        album.put("href", "https://api.spotify.com/v1/albums/" + id);
+        album.put("id", id);
+        album.put("images", images());
+        album.put("name", words(1 + random.nextInt(4)));
+        album.put("release_date", (1970 + random.nextInt(55)) + "-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10));
+        album.put("release_date_precision", "day");
+        album.put("total_tracks", 1 + random.nextInt(20));
+        album.put("type", "album");
+        album.put("uri", "spotify:album:" + id);
+
+        List<Map<String, Object>> artists = new ArrayList<>();
+        for (int i = 0, n = 1 + (random.nextInt(4) == 0 ? 1 + random.nextInt(2) : 0); i < n; i++) {
+            artists.add(artistRef());
+        }
+
+        id = id();
+        Map<String, Object> track = new LinkedHashMap<>();
+        track.put("album", album);
+        track.put("artists", artists);
+        track.put("available_markets", MARKETS);
+        track.put("disc_number", 1);
+        track.put("duration_ms", 120_000 + random.nextInt(240_000));
+        track.put("explicit", random.nextBoolean());
+        track.put("external_ids", Map.of("isrc", "US" + id.substring(0, 10).toUpperCase()));
+        track.put("external_urls", Map.of("spotify", "https://open.spotify.com/track/" + id));
+        track.put("href", "https://api.spotify.com/v1/tracks/" + id);
+        track.put("id", id);
+        track.put("is_local", false);
+        track.put("name", words(1 + random.nextInt(5)));
+        track.put("popularity", random.nextInt(100));
+        track.put("preview_url", null);
+        track.put("track_number", 1 + index % 12);
+        track.put("type", "track");
+        track.put("uri", "spotify:track:" + id);
+        return track;
+    }
+
+    private Map<String, Object> artistRef() {
+        String id = id();
+        Map<String, Object> artist = new LinkedHashMap<>();
+        artist.put("external_urls", Map.of("spotify", "https://open.spotify.com/artist/" + id));
+        artist.put("href", "https://api.spotify.com/v1/artists/" + id);
+        artist.put("id", id);
+        artist.put("name", words(1 + random.nextInt(3)));
+        artist.put("type", "artist");
+        artist.put("uri", "spotify:artist:" + id);
+        return artist;
+    }
+
+    private Map<String, Object> artist() {
+        Map<String, Object> artist = artistRef();
+        Map<String, Object> followers = new LinkedHashMap<>();
+        followers.put("href", null);
+        followers.put("total", random.nextInt(50_000_000));
+        List<String> genres = new ArrayList<>();
+        for (int i = 0, n = random.nextInt(7); i < n; i++) {
+            String genre = GENRES.get((int) (GENRES.size() * Math.pow(random.nextDouble(), 3))); // skewed to the front
+            if (!genres.contains(genre)) {
+                genres.add(genre);
+            }
+        }
+        artist.put("followers", followers);
+        artist.put("genres", genres);
+        artist.put("images", images());
+        artist.put("popularity", random.nextInt(100));
+        return artist;
+    }
+
+    private List<Map<String, Object>> images() {
+        String hash = id() + id();
+        return List.of(image(hash, 640), image(hash, 300), image(hash, 64));
+    }
+
+    private static Map<String, Object> image(String hash, int size) {
+        Map<String, Object> image = new LinkedHashMap<>();
+        image.put("height", size);
+        image.put("url", "https://i.scdn.co/image/ab67616d0000" + size + hash.substring(0, 24));
+        image.put("width", size);
+        return image;
+    }
+
+    private String id() {
+        char[] id = new char[22];
+        for (int i = 0; i < id.length; i++) {
+            id[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(id);
+    }
+
+    private String words(int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            int length = 2 + random.nextInt(8);
+            words.append((char) ('A' + random.nextInt(26)));
+            for (int c = 1; c < length; c++) {
+                words.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return words.toString();
+    }
+
+    private static List<String> markets() {
+        List<String> markets = new ArrayList<>();
+        for (char a = 'A'; a <= 'Z' && markets.size() < 185; a++) {
+            for (char b = 'A'; b <= 'Z' && markets.size() < 185; b += 3) {
+                markets.add("" + a + b);
+            }
+        }
+        return List.copyOf(markets);
+    }
+
+    private static List<String> genres() {
+        String[] styles = {"pop", "rock", "indie", "hip hop", "rap", "r&b", "soul", "jazz", "folk", "house", "techno",
+            "metal", "punk", "emo", "country", "edm", "trap", "lo-fi", "ambient", "funk"};
+        String[] prefixes = {"", "alt ", "modern ", "dark ", "bedroom ", "uk ", "la ", "k-", "j-", "latin ", "dream ", "art "};
+        List<String> genres = new ArrayList<>();
+        for (String prefix : prefixes) {
+            for (String style : styles) {
+                genres.add(prefix + style); // the plain ones come first, so they're the common ones
+            }
+        }
+        return List.copyOf(genres);
+    }
+}
@@ -1,11 +1,24 @@
 package com.spotify.dashboard;
 
+import java.io.IOException;
+import java.nio.file.Files;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
-@SpringBootTest
+// dummy Spotify credentials so the context starts without a local .env,
+// and snapshots go to a temp directory instead of data/history in the working tree
+@SpringBootTest(properties = {"spotify.client-id=test-client", "spotify.client-secret=test-secret"})
 class BackendApplicationTests {
 
+	@DynamicPropertySource
+	static void historyDirectory(DynamicPropertyRegistry registry) throws IOException {
+		String directory = Files.createTempDirectory("history").toString();
+		registry.add("spotify.history.directory", () -> directory);
+	}
+
 	@Test
 	void contextLoads() {
 	}
@@ -0,0 +1,75 @@
+package com.spotify.dashboard.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+class OutboundConcurrencyLimiterTest {
+
+	private static void waitFor(OutboundConcurrencyLimiter limiter, int waiting) throws InterruptedException {
+		for (int i = 0; i < 200 && limiter.waiting() < waiting; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(waiting, limiter.waiting());
+	}
+
+	@Test
+	void blockingCallsWaitInLineWithAsyncOnes() throws Exception {
+		OutboundConcurrencyLimiter limiter = new OutboundConcurrencyLimiter(1, 2000);
+		List<String> started = new CopyOnWriteArrayList<>();
+		CompletableFuture<String> first = new CompletableFuture<>();
+		limiter.submit(() -> first); // holds the only permit
+
+		// the token exchange goes through the RestTemplate interceptor, on its own thread
+		CompletableFuture<ClientHttpResponse> blocking = CompletableFuture.supplyAsync(() -> {
+			try {
+				return limiter.intercept(mock(HttpRequest.class), new byte[0], (request, body) -> {
+					started.add("blocking");
+					return mock(ClientHttpResponse.class);
+				});
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		waitFor(limiter, 1);
+
+		// came in after the blocking call, so it doesn't get to take the permit first
+		CompletableFuture<String> async = limiter.submit(() -> {
+			started.add("async");
+			return CompletableFuture.completedFuture("ok");
+		});
+		assertEquals(2, limiter.waiting());
+
+		first.complete("done");
+		blocking.get(5, TimeUnit.SECONDS);
+		assertEquals("ok", async.get(5, TimeUnit.SECONDS));
+		assertEquals(List.of("blocking", "async"), started);
+		assertEquals(1, limiter.available());
+	}
+
+	@Test
+	void blockingCallGivesUpAfterTheAcquireTimeout() throws Exception {
+		OutboundConcurrencyLimiter limiter = new OutboundConcurrencyLimiter(1, 100);
+		CompletableFuture<String> first = new CompletableFuture<>();
+		limiter.submit(() -> first);
+
+		IOException error = assertThrows(IOException.class, () -> limiter.intercept(mock(HttpRequest.class), new byte[0],
+			(request, body) -> mock(ClientHttpResponse.class)));
+		assertEquals("Too many concurrent Spotify requests, gave up after 100ms", error.getMessage());
+		assertEquals(0, limiter.waiting()); // left the queue, so the next permit doesn't go to nobody
+
+		first.complete("done");
+		assertEquals(1, limiter.available());
+		assertEquals("ok", limiter.submit(() -> CompletableFuture.completedFuture("ok")).get(1, TimeUnit.SECONDS));
+	}
+}
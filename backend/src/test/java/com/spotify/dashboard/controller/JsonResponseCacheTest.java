@@ -0,0 +1,81 @@
+package com.spotify.dashboard.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonResponseCacheTest {
+
+	private final JsonResponseCache cache = new JsonResponseCache(new ObjectMapper());
+
+	private static List<String> bigList(String prefix) {
+		List<String> items = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			items.add(prefix + i);
+		}
+		return items;
+	}
+
+	@Test
+	void sameSourceIsSerializedOnceAndRevalidatesWith304() {
+		List<String> data = bigList("track");
+		ResponseEntity<byte[]> first = cache.respond(new HttpHeaders(), "key", data, Duration.ofMinutes(15), data);
+		ResponseEntity<byte[]> second = cache.respond(new HttpHeaders(), "key", data, Duration.ofMinutes(15), data);
+
+		assertArrayEquals(first.getBody(), second.getBody());
+		assertEquals(1L, cache.stats().get("serialized"));
+		assertEquals(1L, cache.stats().get("reused"));
+		assertEquals("max-age=900, private", first.getHeaders().getCacheControl());
+
+		HttpHeaders conditional = new HttpHeaders();
+		conditional.setIfNoneMatch(first.getHeaders().getETag());
+		ResponseEntity<byte[]> notModified = cache.respond(conditional, "key", data, Duration.ofMinutes(15), data);
+		assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+		assertNull(notModified.getBody());
+	}
+
+	@Test
+	void newDataGetsANewEtag() {
+		List<String> before = bigList("track");
+		List<String> after = bigList("other");
+		String firstTag = cache.respond(new HttpHeaders(), "key", before, Duration.ZERO, before).getHeaders().getETag();
+		String secondTag = cache.respond(new HttpHeaders(), "key", after, Duration.ZERO, after).getHeaders().getETag();
+
+		assertNotEquals(firstTag, secondTag);
+		assertEquals(2L, cache.stats().get("serialized"));
+	}
+
+	@Test
+	void gzipOnlyForClientsThatAskForIt() throws IOException {
+		Map<String, Object> body = Map.of("items", bigList("track"));
+		HttpHeaders gzipClient = new HttpHeaders();
+		gzipClient.set(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8");
+		HttpHeaders refusesGzip = new HttpHeaders();
+		refusesGzip.set(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity");
+
+		ResponseEntity<byte[]> compressed = cache.respond(gzipClient, "key", body, Duration.ZERO, body);
+		ResponseEntity<byte[]> plain = cache.respond(refusesGzip, "key", body, Duration.ZERO, body);
+
+		assertEquals("gzip", compressed.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.getBody()))) {
+			assertArrayEquals(plain.getBody(), in.readAllBytes());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.spotify.dashboard.controller;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.config.SpotifyTokenProperties;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+import com.spotify.dashboard.model.UserProfile;
+import com.spotify.dashboard.service.ArtistCatalog;
+import com.spotify.dashboard.service.GenreAnalyticsEngine;
+import com.spotify.dashboard.service.ListeningHistory;
+import com.spotify.dashboard.service.LoginPrefetcher;
+import com.spotify.dashboard.service.PlaylistBuilder;
+import com.spotify.dashboard.service.SpotifyApiException;
+import com.spotify.dashboard.service.SpotifyApiService;
+import com.spotify.dashboard.service.SpotifyTokenStore;
+
+class SpotifyControllerTest {
+
+	private final SpotifyApiService spotifyApiService = mock(SpotifyApiService.class);
+	private final MockMvc mockMvc;
+
+	SpotifyControllerTest() {
+		SpotifyCacheProperties cacheProps = new SpotifyCacheProperties();
+		GenreAnalyticsEngine genres = new GenreAnalyticsEngine(spotifyApiService, mock(ArtistCatalog.class), cacheProps);
+		SpotifyController controller = new SpotifyController(spotifyApiService, genres, mock(PlaylistBuilder.class),
+			mock(SpotifyTokenStore.class), mock(LoginPrefetcher.class), mock(ListeningHistory.class),
+			new JsonResponseCache(new ObjectMapper()), new SpotifyTokenProperties(), cacheProps);
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	private static Artist artist(String id, String genre) {
+		return new Artist(id, id, "spotify:artist:" + id, List.of(genre), List.of(), null, 0, null);
+	}
+
+	private static <T> CompletableFuture<T> failing(int status) {
+		return CompletableFuture.failedFuture(new SpotifyApiException(status, status + " error"));
+	}
+
+	@Test
+	void failedArtistsStillReturnUserAndTracksWithAnErrorEntry() throws Exception {
+		when(spotifyApiService.getCurrentUserAsync("token"))
+			.thenReturn(CompletableFuture.completedFuture(new UserProfile("user-1", "Someone", List.of(), null)));
+		when(spotifyApiService.getTopTracksAsync(anyString(), anyString(), anyInt()))
+			.thenReturn(CompletableFuture.completedFuture(new Paging<>(List.of(
+				new Track("t1", "Song", "spotify:track:t1", List.of(), null, 180_000, null)), 1, 50, 0)));
+		when(spotifyApiService.getTopArtistsAsync(anyString(), anyString(), anyInt())).thenReturn(failing(503));
+
+		mockMvc.perform(asyncDispatch(dashboardStarted()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.user.id").value("user-1"))
+			.andExpect(jsonPath("$.top_tracks.items[0].duration_ms").value(180_000))
+			.andExpect(jsonPath("$.top_artists").doesNotExist())
+			.andExpect(jsonPath("$.errors.top_artists").exists())
+			.andExpect(jsonPath("$.errors.genres").exists()) // nothing to build them from
+			.andExpect(jsonPath("$.errors.user").doesNotExist())
+			.andExpect(jsonPath("$.errors.top_tracks").doesNotExist());
+	}
+
+	@Test
+	void genresAreBuiltFromTheArtistsEvenWhenAnotherSectionFails() throws Exception {
+		when(spotifyApiService.getCurrentUserAsync("token")).thenReturn(failing(502));
+		when(spotifyApiService.getTopTracksAsync(anyString(), anyString(), anyInt())).thenReturn(failing(500));
+		when(spotifyApiService.getTopArtistsAsync(anyString(), anyString(), anyInt()))
+			.thenReturn(CompletableFuture.completedFuture(new Paging<>(List.of(
+				artist("a1", "indie pop"), artist("a2", "indie pop"), artist("a3", "shoegaze")), 3, 50, 0)));
+
+		mockMvc.perform(asyncDispatch(dashboardStarted()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.top_artists.items.length()").value(3))
+			.andExpect(jsonPath("$.genres.items[0].name").value("indie pop"))
+			.andExpect(jsonPath("$.genres.items[0].count").value(2))
+			.andExpect(jsonPath("$.errors.user").exists())
+			.andExpect(jsonPath("$.errors.top_tracks").exists())
+			.andExpect(jsonPath("$.errors.genres").doesNotExist());
+	}
+
+	private MvcResult dashboardStarted() throws Exception {
+		return mockMvc.perform(get("/api/spotify/dashboard").header("Authorization", "Bearer token"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+	}
+}
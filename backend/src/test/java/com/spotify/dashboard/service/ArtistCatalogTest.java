@@ -0,0 +1,98 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.Artists;
+
+class ArtistCatalogTest {
+
+	private final SpotifyApiService spotifyApiService = mock(SpotifyApiService.class);
+	private final ArtistCatalog catalog = new ArtistCatalog(spotifyApiService, new SpotifyCacheProperties(), 200);
+
+	private static Artist artist(String id) {
+		return new Artist(id, id, "uri", List.of("pop"), List.of(), null, 0, null);
+	}
+
+	@Test
+	void concurrentMissesGoOutAsOneBatchAndAreCachedAfterwards() throws Exception {
+		when(spotifyApiService.getArtistsAsync(eq("token-a"), anyList()))
+			.thenReturn(CompletableFuture.completedFuture(new Artists(List.of(artist("1"), artist("2"), artist("3")))));
+
+		var first = catalog.getArtists("token-a", List.of("1", "2"));
+		var second = catalog.getArtists("token-b", List.of("2", "3"));
+
+		assertEquals(List.of("1", "2"), List.copyOf(first.get(5, TimeUnit.SECONDS).keySet()));
+		assertEquals(List.of("2", "3"), List.copyOf(second.get(5, TimeUnit.SECONDS).keySet()));
+		verify(spotifyApiService, times(1)).getArtistsAsync("token-a", List.of("1", "2", "3"));
+
+		assertEquals("3", catalog.getArtists("token-b", List.of("3")).get(5, TimeUnit.SECONDS).get("3").id());
+		verify(spotifyApiService, never()).getArtistsAsync(eq("token-b"), anyList());
+	}
+
+	@Test
+	void largeLookupsAreSplitIntoChunksOfFifty() throws Exception {
+		when(spotifyApiService.getArtistsAsync(any(), anyList())).thenAnswer(call -> {
+			List<String> ids = call.getArgument(1);
+			return CompletableFuture.completedFuture(new Artists(ids.stream().map(ArtistCatalogTest::artist).toList()));
+		});
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 120; i++) {
+			ids.add("id" + i);
+		}
+
+		Map<String, Artist> result = catalog.getArtists("token", ids).get(5, TimeUnit.SECONDS);
+
+		assertEquals(120, result.size());
+		assertEquals(3, catalog.batchesSent());
+		assertEquals(120, catalog.idsSent());
+	}
+
+	@Test
+	void batchRejectedForItsTokenIsRetriedOnceWithAnotherWaitingUsersToken() throws Exception {
+		when(spotifyApiService.getArtistsAsync(eq("expired"), anyList()))
+			.thenReturn(CompletableFuture.failedFuture(new SpotifyApiException(401, "401 Unauthorized")));
+		when(spotifyApiService.getArtistsAsync(eq("valid"), anyList()))
+			.thenReturn(CompletableFuture.completedFuture(new Artists(List.of(artist("1")))));
+
+		var first = catalog.getArtists("expired", List.of("1"));
+		var second = catalog.getArtists("valid", List.of("1"));
+
+		assertEquals("1", first.get(5, TimeUnit.SECONDS).get("1").id());
+		assertEquals("1", second.get(5, TimeUnit.SECONDS).get("1").id());
+	}
+
+	@Test
+	void upstreamFailuresFailEveryWaiterWithoutTryingOtherTokens() throws Exception {
+		when(spotifyApiService.getArtistsAsync(anyString(), anyList()))
+			.thenReturn(CompletableFuture.failedFuture(new SpotifyApiException(503, "503 Service Unavailable")));
+
+		var futures = List.of(catalog.getArtists("a", List.of("1")), catalog.getArtists("b", List.of("1")),
+			catalog.getArtists("c", List.of("1")));
+
+		for (var future : futures) {
+			assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+		}
+		verify(spotifyApiService, times(1)).getArtistsAsync(anyString(), anyList());
+	}
+}
@@ -0,0 +1,100 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.config.SpotifyResilienceProperties;
+
+class EndpointCircuitBreakersTest {
+
+	private static EndpointCircuitBreakers breakers(Duration openDuration) {
+		SpotifyResilienceProperties props = new SpotifyResilienceProperties();
+		props.setFailureThreshold(3);
+		props.setOpenDuration(openDuration);
+		return new EndpointCircuitBreakers(props);
+	}
+
+	private static CompletableFuture<String> failing(AtomicInteger calls, int status) {
+		calls.incrementAndGet();
+		return CompletableFuture.failedFuture(new SpotifyApiException(status, status + " error"));
+	}
+
+	@Test
+	void opensAfterRepeatedUpstreamFailuresAndFailsFast() {
+		EndpointCircuitBreakers breakers = breakers(Duration.ofMinutes(1));
+		AtomicInteger calls = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			breakers.execute("/me", () -> failing(calls, 503));
+		}
+
+		assertEquals(3, calls.get()); // the last two never reached Spotify
+		assertEquals(EndpointCircuitBreakers.State.OPEN, breakers.state("/me"));
+		assertEquals(EndpointCircuitBreakers.State.CLOSED, breakers.state("/me/top/tracks")); // other endpoints unaffected
+	}
+
+	@Test
+	void clientErrorsDoNotOpenTheCircuit() {
+		EndpointCircuitBreakers breakers = breakers(Duration.ofMinutes(1));
+		AtomicInteger calls = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			breakers.execute("/me", () -> failing(calls, 401));
+		}
+
+		assertEquals(5, calls.get());
+		assertEquals(EndpointCircuitBreakers.State.CLOSED, breakers.state("/me"));
+	}
+
+	@Test
+	void localQueueTimeoutsDoNotOpenTheCircuit() {
+		EndpointCircuitBreakers breakers = breakers(Duration.ofMinutes(1));
+		AtomicInteger calls = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			breakers.execute("/me", () -> {
+				calls.incrementAndGet();
+				return CompletableFuture.failedFuture(SpotifyApiException.overloaded("Spotify request queue timed out after 10ms"));
+			});
+		}
+
+		assertEquals(5, calls.get());
+		assertEquals(EndpointCircuitBreakers.State.CLOSED, breakers.state("/me"));
+	}
+
+	@Test
+	void trialCallClosesTheCircuitAgainOnceOpenDurationPassed() throws Exception {
+		EndpointCircuitBreakers breakers = breakers(Duration.ofMillis(20));
+		AtomicInteger calls = new AtomicInteger();
+		for (int i = 0; i < 3; i++) {
+			breakers.execute("/me", () -> failing(calls, 500));
+		}
+		Thread.sleep(40);
+
+		assertEquals("ok", breakers.execute("/me", () -> CompletableFuture.completedFuture("ok")).join());
+		assertEquals(EndpointCircuitBreakers.State.CLOSED, breakers.state("/me"));
+	}
+
+	@Test
+	void lateSuccessFromBeforeTheCircuitOpenedDoesNotCloseIt() {
+		EndpointCircuitBreakers breakers = breakers(Duration.ofMinutes(1));
+		AtomicInteger calls = new AtomicInteger();
+		CompletableFuture<String> slow = new CompletableFuture<>();
+		breakers.execute("/me", () -> slow); // goes out while the circuit is still closed
+		for (int i = 0; i < 3; i++) {
+			breakers.execute("/me", () -> failing(calls, 503));
+		}
+		slow.complete("ok");
+
+		assertEquals(EndpointCircuitBreakers.State.OPEN, breakers.state("/me"));
+	}
+
+	@Test
+	void endpointKeysIgnoreIdsAndQueryStrings() {
+		assertEquals("/users/{id}/playlists", EndpointCircuitBreakers.endpointKey("/users/abc123/playlists"));
+		assertEquals("/playlists/{id}/tracks", EndpointCircuitBreakers.endpointKey("/playlists/xyz/tracks"));
+		assertEquals("/me/top/tracks", EndpointCircuitBreakers.endpointKey("/me/top/tracks?time_range=short_term&limit=50"));
+	}
+}
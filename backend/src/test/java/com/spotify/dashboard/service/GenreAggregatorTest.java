@@ -0,0 +1,57 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.GenreBreakdown;
+import com.spotify.dashboard.model.GenreStat;
+
+class GenreAggregatorTest {
+
+	private static Artist artist(String... genres) {
+		return new Artist("id", "name", "uri", List.of(genres), List.of(), null, 0, null);
+	}
+
+	@Test
+	void countsAndRankWeightsGenres() {
+		GenreAggregator aggregator = new GenreAggregator(2);
+		GenreBreakdown breakdown = aggregator.summarize(List.of(
+			artist("indie"), // rank 1 of 4, weight 4
+			artist("pop", "dance"), // weight 3
+			artist("pop"), // weight 2
+			artist("pop", "indie"))); // weight 1
+
+		assertEquals(List.of(
+			new GenreStat("pop", 3, 75.0, 6, 60.0),
+			new GenreStat("indie", 2, 50.0, 5, 50.0)), breakdown.items());
+		// dance (weight 3) loses to indie (5) and pop (6) on weight too, only the top 2 are kept
+		assertEquals(List.of("pop", "indie"), breakdown.weighted().stream().map(GenreStat::name).toList());
+		assertEquals(3, aggregator.dictionarySize());
+	}
+
+	@Test
+	void weightingCanReorderGenresAndTiesGoToTheHigherRankedArtist() {
+		GenreAggregator aggregator = new GenreAggregator(10);
+		GenreBreakdown breakdown = aggregator.summarize(List.of(
+			artist("jazz"), // weight 3
+			artist("rock"), // weight 2
+			artist("rock", "folk"))); // weight 1
+
+		assertEquals(List.of("rock", "jazz", "folk"), breakdown.items().stream().map(GenreStat::name).toList());
+		// jazz and rock both score 3, jazz showed up first
+		assertEquals(List.of("jazz", "rock", "folk"), breakdown.weighted().stream().map(GenreStat::name).toList());
+		assertEquals(16.67, breakdown.weighted().get(2).weightedPercentage());
+	}
+
+	@Test
+	void noGenresGivesEmptyBreakdown() {
+		GenreAggregator aggregator = new GenreAggregator(10);
+		assertSame(GenreBreakdown.EMPTY, aggregator.summarize(List.of()));
+		assertSame(GenreBreakdown.EMPTY, aggregator.summarize(List.of(artist())));
+	}
+}
@@ -0,0 +1,45 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.GenreBreakdown;
+import com.spotify.dashboard.model.Paging;
+
+class GenreAnalyticsEngineTest {
+
+	private final SpotifyApiService spotifyApiService = mock(SpotifyApiService.class);
+	private final GenreAnalyticsEngine engine = new GenreAnalyticsEngine(spotifyApiService,
+		mock(ArtistCatalog.class), new SpotifyCacheProperties());
+
+	private static Paging<Artist> artists(String genre) {
+		return new Paging<>(List.of(new Artist("1", "one", "uri", List.of(genre), List.of(), null, 0, null)), 1, 50, 0);
+	}
+
+	@Test
+	void requestedRangeDoesNotWaitOnOrFailWithTheOtherRanges() throws Exception {
+		when(spotifyApiService.getTopArtistsAsync(anyString(), anyString(), anyInt()))
+			.thenReturn(new CompletableFuture<>()); // still queued as background work
+		when(spotifyApiService.getTopArtistsAsync(anyString(), eq("medium_term"), anyInt()))
+			.thenReturn(CompletableFuture.failedFuture(new SpotifyApiException(503, "503 Service Unavailable")));
+		when(spotifyApiService.getTopArtistsAsync(anyString(), eq("short_term"), anyInt()))
+			.thenReturn(CompletableFuture.completedFuture(artists("pop")));
+
+		GenreBreakdown breakdown = engine.breakdown("token", "short_term", GenreAnalyticsEngine.SOURCE_ARTISTS)
+			.get(5, TimeUnit.SECONDS);
+
+		assertEquals("pop", breakdown.items().get(0).name());
+	}
+}
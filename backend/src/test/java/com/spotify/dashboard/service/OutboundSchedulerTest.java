@@ -0,0 +1,124 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.config.OutboundConcurrencyLimiter;
+import com.spotify.dashboard.config.SpotifyRateLimitProperties;
+
+class OutboundSchedulerTest {
+
+	private static OutboundScheduler scheduler(int maxConcurrent) {
+		SpotifyRateLimitProperties props = new SpotifyRateLimitProperties();
+		props.setBaseBackoff(Duration.ofMillis(1));
+		return new OutboundScheduler(new OutboundConcurrencyLimiter(maxConcurrent, 5000), props);
+	}
+
+	@Test
+	void usersTakeTurnsAndInteractiveGoesBeforeBackground() throws Exception {
+		OutboundScheduler scheduler = scheduler(1);
+		List<String> started = new CopyOnWriteArrayList<>();
+		CompletableFuture<String> blocker = new CompletableFuture<>();
+		scheduler.submit("a", RequestPriority.INTERACTIVE, true, () -> blocker); // holds the only permit
+
+		CompletableFuture<?> last = null;
+		for (String[] call : new String[][] {{"bg", "a1"}, {"a", "a2"}, {"a", "a3"}, {"a", "a4"}, {"b", "b1"}}) {
+			RequestPriority priority = call[0].equals("bg") ? RequestPriority.BACKGROUND : RequestPriority.INTERACTIVE;
+			Supplier<CompletableFuture<String>> work = () -> {
+				started.add(call[1]);
+				return CompletableFuture.completedFuture(call[1]);
+			};
+			last = scheduler.submit(call[0].equals("bg") ? "a" : call[0], priority, true, work);
+		}
+		blocker.complete("done");
+		last.get(5, TimeUnit.SECONDS);
+
+		// b jumps ahead of a's backlog, background work waits for all interactive calls
+		assertEquals(List.of("a2", "b1", "a3", "a4", "a1"), waitForSize(started, 5));
+	}
+
+	@Test
+	void rateLimitedCallsWaitForRetryAfterAndAreRetried() throws Exception {
+		OutboundScheduler scheduler = scheduler(10);
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = scheduler.submit("a", RequestPriority.INTERACTIVE, false, () -> calls.incrementAndGet() == 1
+			? CompletableFuture.<String>failedFuture(new SpotifyApiException(429, "429 Too Many Requests", 0))
+			: CompletableFuture.completedFuture("ok")).get(5, TimeUnit.SECONDS);
+
+		assertEquals("ok", result); // even a POST is retried after a 429, Spotify never processed it
+		assertEquals(2, calls.get());
+		assertEquals(1, scheduler.rateLimitedCount());
+	}
+
+	@Test
+	void retryAfterLongerThanTheQueueTimeoutIsWaitedOut() throws Exception {
+		SpotifyRateLimitProperties props = new SpotifyRateLimitProperties();
+		props.setQueueTimeout(Duration.ofMillis(100));
+		OutboundScheduler scheduler = new OutboundScheduler(new OutboundConcurrencyLimiter(10, 5000), props);
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = scheduler.submit("a", RequestPriority.INTERACTIVE, true, () -> calls.incrementAndGet() == 1
+			? CompletableFuture.<String>failedFuture(new SpotifyApiException(429, "429 Too Many Requests", 1))
+			: CompletableFuture.completedFuture("ok")).get(5, TimeUnit.SECONDS);
+
+		assertEquals("ok", result); // not a 503 "queue timed out" while it was only waiting out the 1s pause
+		assertEquals(2, calls.get());
+		assertEquals(0, scheduler.timedOutCount());
+	}
+
+	@Test
+	void serverErrorsAreRetriedForGetsOnly() throws Exception {
+		OutboundScheduler scheduler = scheduler(10);
+		AtomicInteger getCalls = new AtomicInteger();
+		AtomicInteger postCalls = new AtomicInteger();
+
+		CompletableFuture<String> get = scheduler.submit("a", RequestPriority.INTERACTIVE, true, () -> {
+			getCalls.incrementAndGet();
+			return CompletableFuture.failedFuture(new SpotifyApiException(502, "502 Bad Gateway"));
+		});
+		CompletableFuture<String> post = scheduler.submit("a", RequestPriority.INTERACTIVE, false, () -> {
+			postCalls.incrementAndGet();
+			return CompletableFuture.failedFuture(new SpotifyApiException(502, "502 Bad Gateway"));
+		});
+
+		ExecutionException getError = assertThrows(ExecutionException.class, () -> get.get(5, TimeUnit.SECONDS));
+		assertThrows(ExecutionException.class, () -> post.get(5, TimeUnit.SECONDS));
+		assertInstanceOf(SpotifyApiException.class, getError.getCause());
+		assertEquals(4, getCalls.get()); // first try + 3 retries
+		assertEquals(1, postCalls.get());
+	}
+
+	@Test
+	void concurrencyPermitTimeoutIsALocalOverload() {
+		OutboundConcurrencyLimiter limiter = new OutboundConcurrencyLimiter(1, 20);
+		limiter.submit(CompletableFuture<String>::new); // holds the only permit, never finishes
+
+		CompletableFuture<String> waiting = limiter.submit(() -> CompletableFuture.completedFuture("never"));
+
+		ExecutionException error = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+		SpotifyApiException apiError = assertInstanceOf(SpotifyApiException.class, error.getCause());
+		assertEquals(503, apiError.getStatus());
+		assertTrue(apiError.isLocalOverload());
+	}
+
+	private static List<String> waitForSize(List<String> list, int size) throws InterruptedException {
+		for (int i = 0; i < 500 && list.size() < size; i++) {
+			Thread.sleep(10);
+		}
+		return List.copyOf(list);
+	}
+}
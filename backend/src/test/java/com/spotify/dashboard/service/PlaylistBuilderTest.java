@@ -0,0 +1,83 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+
+class PlaylistBuilderTest {
+
+	private final SpotifyApiService spotifyApiService = mock(SpotifyApiService.class);
+	private final PlaylistBuilder builder = new PlaylistBuilder(spotifyApiService);
+
+	private static Paging<Track> page(String prefix, int from, int count) {
+		List<Track> tracks = new ArrayList<>();
+		for (int i = from; i < from + count; i++) {
+			tracks.add(new Track("id", "name", prefix + i, List.of(), null, 0, null));
+		}
+		return new Paging<>(tracks, 0, 50, from);
+	}
+
+	@Test
+	void pagesThroughTopTracksAndStopsWhenTheyRunOut() throws Exception {
+		when(spotifyApiService.getTopTracksAsync(eq("token"), eq("short_term"), eq(50), anyInt())).thenAnswer(call -> {
+			int offset = call.getArgument(3);
+			return CompletableFuture.completedFuture(offset < 100 ? page("t", offset, 50) : page("t", offset, 0));
+		});
+
+		List<String> uris = builder.selectTracks("token", PlaylistBuilder.TEMPLATE_TOP_TRACKS, "short_term", 180)
+			.get(5, TimeUnit.SECONDS);
+
+		assertEquals(100, uris.size());
+		assertEquals("t0", uris.get(0));
+		assertEquals("t99", uris.get(99));
+	}
+
+	@Test
+	void allTimeMixTakesTurnsBetweenRangesWithoutDuplicates() throws Exception {
+		when(spotifyApiService.getTopTracksAsync("token", "short_term", 50, 0))
+			.thenReturn(CompletableFuture.completedFuture(page("s", 0, 2)));
+		when(spotifyApiService.getTopTracksAsync("token", "medium_term", 50, 0))
+			.thenReturn(CompletableFuture.completedFuture(page("s", 0, 3))); // overlaps with short_term
+		when(spotifyApiService.getTopTracksAsync("token", "long_term", 50, 0))
+			.thenReturn(CompletableFuture.completedFuture(page("l", 0, 2)));
+
+		List<String> uris = builder.selectTracks("token", PlaylistBuilder.TEMPLATE_ALL_TIME_MIX, null, 50)
+			.get(5, TimeUnit.SECONDS);
+
+		assertEquals(List.of("s0", "l0", "s1", "l1", "s2"), uris);
+	}
+
+	@Test
+	void addsTracksInOrderedChunksOfOneHundred() throws Exception {
+		when(spotifyApiService.addTracksToPlaylistAsync(anyString(), anyString(), anyMap()))
+			.thenReturn(CompletableFuture.completedFuture(Map.of()));
+		List<String> uris = new ArrayList<>();
+		for (int i = 0; i < 250; i++) {
+			uris.add("t" + i);
+		}
+
+		assertEquals(250, builder.addTracks("token", "playlist", uris).get(5, TimeUnit.SECONDS));
+
+		InOrder order = inOrder(spotifyApiService);
+		order.verify(spotifyApiService).addTracksToPlaylistAsync("token", "playlist", Map.of("uris", uris.subList(0, 100)));
+		order.verify(spotifyApiService).addTracksToPlaylistAsync("token", "playlist", Map.of("uris", uris.subList(100, 200)));
+		order.verify(spotifyApiService).addTracksToPlaylistAsync("token", "playlist", Map.of("uris", uris.subList(200, 250)));
+	}
+}
@@ -0,0 +1,57 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RequestCoalescerTest {
+
+	private final RequestCoalescer coalescer = new RequestCoalescer();
+
+	@Test
+	void concurrentIdenticalCallsShareOneUpstreamCall() throws Exception {
+		AtomicInteger upstreamCalls = new AtomicInteger();
+		Map<String, Object> body = Map.of("id", "me");
+		CompletableFuture<Map<String, Object>> upstream = new CompletableFuture<>();
+
+		CompletableFuture<Map<String, Object>> leader = coalescer.execute("token", "/me", () -> {
+			upstreamCalls.incrementAndGet();
+			return upstream;
+		});
+		CompletableFuture<Map<String, Object>> follower = coalescer.execute("token", "/me", () -> {
+			upstreamCalls.incrementAndGet();
+			return CompletableFuture.completedFuture(Map.of());
+		});
+		assertEquals(1, coalescer.coalescedCount());
+		upstream.complete(body);
+
+		assertSame(body, leader.get(5, TimeUnit.SECONDS));
+		assertSame(body, follower.get(5, TimeUnit.SECONDS));
+		assertEquals(1, upstreamCalls.get());
+		assertEquals(0, coalescer.inFlightCount());
+	}
+
+	@Test
+	void failuresReachEveryWaiterAndAreNotRemembered() throws Exception {
+		CompletableFuture<Map<String, Object>> upstream = new CompletableFuture<>();
+
+		CompletableFuture<Map<String, Object>> leader = coalescer.execute("token", "/me", () -> upstream);
+		CompletableFuture<Map<String, Object>> follower = coalescer.execute("token", "/me",
+			() -> CompletableFuture.completedFuture(Map.of()));
+		upstream.completeExceptionally(new IllegalStateException("boom"));
+
+		Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+		Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+		assertEquals("boom", leaderError.getCause().getMessage());
+		assertEquals("boom", followerError.getCause().getMessage());
+		assertEquals(Map.of("ok", true), coalescer.execute("token", "/me",
+			() -> CompletableFuture.completedFuture(Map.<String, Object>of("ok", true))).join());
+	}
+}
@@ -0,0 +1,91 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.config.SpotifyResilienceProperties;
+
+class RequestHedgerTest {
+
+	@Test
+	void slowCallGetsABackupRequestAndTheFasterOneWins() throws Exception {
+		SpotifyResilienceProperties props = new SpotifyResilienceProperties();
+		props.setHedgeMinSamples(5);
+		props.setHedgeMinDelay(Duration.ofMillis(10));
+		props.setHedgeMaxRatio(1.0);
+		RequestHedger hedger = new RequestHedger(props);
+		for (int i = 0; i < 5; i++) { // fast history, so the threshold ends up at the 10ms floor
+			hedger.execute("/me", sending -> {
+				sending.getAsBoolean();
+				return CompletableFuture.completedFuture("fast");
+			}).join();
+		}
+
+		AtomicInteger attempts = new AtomicInteger();
+		CompletableFuture<String> stuck = new CompletableFuture<>(); // first attempt never answers
+		String result = hedger.execute("/me", sending -> {
+			sending.getAsBoolean();
+			return attempts.incrementAndGet() == 1 ? stuck : CompletableFuture.completedFuture("backup");
+		}).get(5, TimeUnit.SECONDS);
+
+		assertEquals("backup", result);
+		assertEquals(2, attempts.get());
+		// the win is counted right after the result completes, on the thread that completed it
+		for (int i = 0; i < 500 && hedger.hedgeWinCount() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, hedger.hedgeWinCount());
+	}
+
+	@Test
+	void noHedgingWithoutEnoughHistory() throws Exception {
+		RequestHedger hedger = new RequestHedger(new SpotifyResilienceProperties());
+		AtomicInteger attempts = new AtomicInteger();
+		CompletableFuture<String> slow = new CompletableFuture<>();
+		CompletableFuture<String> result = hedger.execute("/me", sending -> {
+			sending.getAsBoolean();
+			attempts.incrementAndGet();
+			return slow;
+		});
+		Thread.sleep(100);
+		slow.complete("ok");
+
+		assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+		assertEquals(1, attempts.get());
+		assertEquals(0, hedger.hedgeCount());
+	}
+
+	@Test
+	void callStillQueuedIsNotHedged() throws Exception {
+		SpotifyResilienceProperties props = new SpotifyResilienceProperties();
+		props.setHedgeMinSamples(5);
+		props.setHedgeMinDelay(Duration.ofMillis(10));
+		props.setHedgeMaxRatio(1.0);
+		RequestHedger hedger = new RequestHedger(props);
+		for (int i = 0; i < 5; i++) {
+			hedger.execute("/me", sending -> {
+				sending.getAsBoolean();
+				return CompletableFuture.completedFuture("fast");
+			}).join();
+		}
+
+		AtomicInteger attempts = new AtomicInteger();
+		CompletableFuture<String> queued = new CompletableFuture<>(); // never let out of the scheduler's queue
+		CompletableFuture<String> result = hedger.execute("/me", sending -> {
+			attempts.incrementAndGet();
+			return queued;
+		});
+		Thread.sleep(100);
+		queued.complete("ok");
+
+		assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+		assertEquals(1, attempts.get());
+		assertEquals(0, hedger.hedgeCount());
+	}
+}
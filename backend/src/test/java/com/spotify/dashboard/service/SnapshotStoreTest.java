@@ -0,0 +1,137 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.spotify.dashboard.config.SpotifyHistoryProperties;
+import com.spotify.dashboard.model.GenreDrift;
+import com.spotify.dashboard.model.RankMovement;
+
+class SnapshotStoreTest {
+
+	private static final long DAY = Duration.ofDays(1).toMillis();
+
+	@TempDir
+	Path directory;
+
+	private static List<SnapshotStore.Item> tracks(String... ids) {
+		return Arrays.stream(ids).map(id -> new SnapshotStore.Item(id, "Song " + id, 0)).toList();
+	}
+
+	@Test
+	void snapshotsSurviveARestartAndComeBackInTimeOrder() throws IOException {
+		try (SnapshotStore store = new SnapshotStore(directory)) {
+			store.append("user", SnapshotStore.Kind.TRACKS, 1, 2 * DAY, tracks("b", "a"));
+			store.append("user", SnapshotStore.Kind.TRACKS, 1, DAY, tracks("a", "b"));
+			store.append("user", SnapshotStore.Kind.GENRES, 1, DAY, List.of(new SnapshotStore.Item("indie", null, 4250)));
+			store.append("other", SnapshotStore.Kind.TRACKS, 1, DAY, tracks("c"));
+		}
+
+		try (SnapshotStore store = new SnapshotStore(directory)) {
+			List<SnapshotStore.Snapshot> snapshots = store.snapshots("user", SnapshotStore.Kind.TRACKS, 1, 0, Long.MAX_VALUE);
+			assertEquals(List.of(DAY, 2 * DAY), snapshots.stream().map(SnapshotStore.Snapshot::takenAt).toList());
+			assertEquals(tracks("a", "b"), snapshots.get(0).items());
+			assertEquals(List.of(new SnapshotStore.Item("indie", null, 4250)),
+				store.snapshots("user", SnapshotStore.Kind.GENRES, 1, 0, Long.MAX_VALUE).get(0).items());
+			assertEquals(1, store.snapshots("user", SnapshotStore.Kind.TRACKS, 1, 2 * DAY, 3 * DAY).size());
+			assertEquals(2 * DAY, store.lastTakenAt("user", SnapshotStore.Kind.TRACKS, 1));
+			assertEquals(-1, store.lastTakenAt("user", SnapshotStore.Kind.ARTISTS, 1));
+			assertEquals(4, store.recordCount());
+		}
+	}
+
+	@Test
+	void halfWrittenRecordAtTheEndIsDropped() throws IOException {
+		try (SnapshotStore store = new SnapshotStore(directory)) {
+			store.append("user", SnapshotStore.Kind.TRACKS, 0, DAY, tracks("a", "b"));
+		}
+		try (FileChannel file = FileChannel.open(directory.resolve("snapshots.bin"), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			file.write(ByteBuffer.allocate(12).putInt(100).putInt(0).putInt(7).flip()); // a crash partway through the next one
+		}
+
+		try (SnapshotStore store = new SnapshotStore(directory)) {
+			assertEquals(1, store.recordCount());
+			store.append("user", SnapshotStore.Kind.TRACKS, 0, 2 * DAY, tracks("c"));
+			assertEquals(2, store.snapshots("user", SnapshotStore.Kind.TRACKS, 0, 0, Long.MAX_VALUE).size());
+		}
+	}
+
+	@Test
+	void recordsSpreadOverManySegmentsReadBackBeforeAndAfterARestart() throws IOException {
+		// 256 byte segments, so records start near (and run past) segment ends all the time
+		try (SnapshotStore store = new SnapshotStore(directory, 256)) {
+			for (int day = 1; day <= 40; day++) {
+				store.append("user", SnapshotStore.Kind.TRACKS, 0, day * DAY, tracksOfDay(day));
+				// read right after every append, so the last segment keeps growing under an existing map
+				assertEquals(tracksOfDay(day), store.snapshots("user", SnapshotStore.Kind.TRACKS, 0, day * DAY, day * DAY).get(0).items());
+			}
+		}
+
+		try (SnapshotStore store = new SnapshotStore(directory, 256)) {
+			List<SnapshotStore.Snapshot> snapshots = store.snapshots("user", SnapshotStore.Kind.TRACKS, 0, 0, Long.MAX_VALUE);
+			assertEquals(40, snapshots.size());
+			for (int day = 1; day <= 40; day++) {
+				assertEquals(tracksOfDay(day), snapshots.get(day - 1).items());
+			}
+		}
+	}
+
+	private static List<SnapshotStore.Item> tracksOfDay(int day) {
+		return tracks(IntStream.rangeClosed(0, day % 10).mapToObj(i -> "t" + (day + i)).toArray(String[]::new));
+	}
+
+	@Test
+	void failedAppendDoesNotKeepCodesForStringsThatNeverReachedDisk() throws IOException {
+		SnapshotStore store = new SnapshotStore(directory);
+		store.append("user", SnapshotStore.Kind.TRACKS, 0, DAY, tracks("a"));
+		int known = store.dictionarySize();
+		store.close(); // every write fails from here on
+
+		assertThrows(UncheckedIOException.class, () -> store.append("user", SnapshotStore.Kind.TRACKS, 0, 2 * DAY, tracks("b", "c")));
+		assertEquals(known, store.dictionarySize());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void rankMovementAndGenreDriftCompareOldestAndNewestSnapshot() throws IOException {
+		try (SnapshotStore store = new SnapshotStore(directory)) {
+			ListeningHistory history = new ListeningHistory(store, mock(SpotifyApiService.class), mock(SpotifyTokenStore.class),
+				new SpotifyHistoryProperties());
+			store.append("user", SnapshotStore.Kind.TRACKS, 0, DAY, tracks("a", "b", "c"));
+			store.append("user", SnapshotStore.Kind.TRACKS, 0, 2 * DAY, tracks("c", "a", "d"));
+			store.append("user", SnapshotStore.Kind.GENRES, 0, DAY, List.of(new SnapshotStore.Item("rock", null, 6000),
+				new SnapshotStore.Item("jazz", null, 1000)));
+			store.append("user", SnapshotStore.Kind.GENRES, 0, 2 * DAY, List.of(new SnapshotStore.Item("rock", null, 5500),
+				new SnapshotStore.Item("jazz", null, 3000)));
+
+			Map<String, Object> movement = history.rankMovement("user", SnapshotStore.Kind.TRACKS, "short_term",
+				Instant.EPOCH, Instant.ofEpochMilli(3 * DAY));
+			List<RankMovement> items = (List<RankMovement>) movement.get("items");
+			assertEquals(new RankMovement("c", "Song c", 1, 3, 2, Arrays.asList(3, 1)), items.get(0));
+			assertEquals(new RankMovement("d", "Song d", 3, null, null, Arrays.asList(null, 3)), items.get(2));
+			assertEquals(List.of("b"), ((List<RankMovement>) movement.get("dropped")).stream().map(RankMovement::id).toList());
+
+			List<GenreDrift> genres = (List<GenreDrift>) history.genreDrift("user", "short_term", Instant.EPOCH,
+				Instant.ofEpochMilli(3 * DAY)).get("genres");
+			assertEquals(new GenreDrift("jazz", 10.0, 30.0, 20.0, List.of(10.0, 30.0)), genres.get(0)); // biggest mover first
+			assertEquals(-5.0, genres.get(1).change());
+		}
+	}
+}
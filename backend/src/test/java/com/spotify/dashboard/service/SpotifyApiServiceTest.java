@@ -0,0 +1,88 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.dashboard.config.OutboundConcurrencyLimiter;
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.config.SpotifyRateLimitProperties;
+import com.spotify.dashboard.config.SpotifyResilienceProperties;
+import com.spotify.dashboard.config.SpotifyTokenProperties;
+import com.spotify.dashboard.model.UserProfile;
+
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+
+class SpotifyApiServiceTest {
+
+	private final CloseableHttpAsyncClient httpClient = mock(CloseableHttpAsyncClient.class);
+	private final OutboundConcurrencyLimiter limiter = new OutboundConcurrencyLimiter(10, 1000);
+	private final OutboundScheduler scheduler = new OutboundScheduler(limiter, new SpotifyRateLimitProperties());
+	private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+	private final ObservationRegistry observations = ObservationRegistry.create();
+	// one thread, no queue: once something's running on it, everything else gets rejected
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final SpotifyApiService service;
+
+	SpotifyApiServiceTest() {
+		observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+		service = new SpotifyApiService(httpClient, "http://spotify.test/v1",
+			new SpotifyResponseCache(new SpotifyCacheProperties()), new RequestCoalescer(), scheduler,
+			new EndpointCircuitBreakers(new SpotifyResilienceProperties()), new RequestHedger(new SpotifyResilienceProperties()),
+			new SpotifyTokenStore(mock(RestTemplate.class), new SpotifyTokenProperties(), "client", "secret",
+				"http://localhost/callback", Runnable::run),
+			new SpotifyClientMetrics(observations, meters, scheduler, limiter), new ObjectMapper(), executor);
+	}
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		executor.shutdownNow();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void responsesStillCompleteWhenTheExecutorIsFull() throws Exception {
+		// Spotify answers right away, on the calling thread
+		doAnswer(invocation -> {
+			SimpleHttpResponse response = SimpleHttpResponse.create(200, "{\"id\":\"user-1\",\"display_name\":\"Someone\"}",
+				ContentType.APPLICATION_JSON);
+			invocation.<FutureCallback<SimpleHttpResponse>>getArgument(1).completed(response);
+			return null;
+		}).when(httpClient).execute(any(SimpleHttpRequest.class), any(FutureCallback.class));
+		executor.execute(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		UserProfile user = service.getCurrentUserAsync("token").get(5, TimeUnit.SECONDS);
+
+		assertEquals("user-1", user.id());
+		assertEquals(0, limiter.inUse()); // permit handed back
+		assertEquals(0.0, meters.get("spotify.client.in.flight").gauge().value()); // observation stopped
+		assertEquals(1, meters.get("spotify.client.requests").tags("status", "200").timer().count());
+	}
+}
@@ -0,0 +1,53 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.config.OutboundConcurrencyLimiter;
+
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+class SpotifyClientMetricsTest {
+
+	private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+	private final ObservationRegistry observations = ObservationRegistry.create();
+	private final SpotifyClientMetrics metrics;
+
+	SpotifyClientMetricsTest() {
+		observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+		metrics = new SpotifyClientMetrics(observations, meters, mock(OutboundScheduler.class), mock(OutboundConcurrencyLimiter.class));
+	}
+
+	@Test
+	void callsAreTimedPerEndpointAndStatus() {
+		Observation ok = metrics.start("/me/top/tracks", "GET", "/v1/me/top/tracks?limit=50", null);
+		assertEquals(1.0, meters.get("spotify.client.in.flight").gauge().value());
+		metrics.stop(ok, "/me/top/tracks", 200, null);
+		Observation limited = metrics.start("/me/top/tracks", "GET", "/v1/me/top/tracks?limit=50", null);
+		metrics.stop(limited, "/me/top/tracks", 429, new SpotifyApiException(429, "slow down"));
+
+		assertEquals(1, meters.get("spotify.client.requests").tags("endpoint", "/me/top/tracks", "status", "200", "outcome", "SUCCESS")
+			.timer().count());
+		assertEquals(1, meters.get("spotify.client.requests").tags("status", "429", "outcome", "CLIENT_ERROR").timer().count());
+		assertEquals(0.0, meters.get("spotify.client.in.flight").gauge().value());
+		// the URL has IDs and query strings in it, it's only for spans
+		assertEquals(0, meters.find("spotify.client.requests").tagKeys("http.url").timers().size());
+	}
+
+	@Test
+	void failuresAreCountedByStatus() {
+		metrics.stop(metrics.start("/me", "GET", "/v1/me", null), "/me", 0, new RuntimeException("connection refused"));
+		metrics.stop(metrics.start("/me", "GET", "/v1/me", null), "/me", 502, null);
+		metrics.stop(metrics.start("/me", "GET", "/v1/me", null), "/me", 502, null);
+		metrics.stop(metrics.start("/me", "GET", "/v1/me", null), "/me", 200, null);
+
+		assertEquals(1.0, meters.get("spotify.client.errors").tags("endpoint", "/me", "status", "IO_ERROR").counter().count());
+		assertEquals(2.0, meters.get("spotify.client.errors").tags("status", "502").counter().count());
+		assertEquals(3.0, meters.get("spotify.client.errors").counters().stream().mapToDouble(counter -> counter.count()).sum());
+	}
+}
@@ -0,0 +1,81 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.dashboard.model.Artist;
+import com.spotify.dashboard.model.Paging;
+import com.spotify.dashboard.model.Track;
+import com.spotify.dashboard.model.UserProfile;
+
+// Spotify-shaped payloads (see SpotifyPayloads) decode into the model records, and come back out
+// with the snake_case fields the frontend reads. A wrong field name or @JsonNaming would blank the UI
+class SpotifyModelRoundTripTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final SpotifyPayloads payloads = new SpotifyPayloads(42);
+
+	@Test
+	void topTracksKeepWhatTheTrackListRenders() throws Exception {
+		byte[] payload = payloads.topTracks(20);
+		Paging<Track> page = objectMapper.readerFor(new TypeReference<Paging<Track>>() {}).readValue(payload);
+
+		JsonNode in = objectMapper.readTree(payload);
+		JsonNode out = objectMapper.readTree(objectMapper.writeValueAsBytes(page));
+		assertEquals(20, out.get("items").size());
+		assertEquals(in.get("total"), out.get("total"));
+		for (int i = 0; i < 20; i++) {
+			JsonNode expected = in.get("items").get(i);
+			JsonNode actual = out.get("items").get(i);
+			for (String field : List.of("id", "name", "uri", "duration_ms")) {
+				assertEquals(expected.get(field), actual.get(field), field);
+			}
+			assertEquals(expected.at("/external_urls/spotify"), actual.at("/external_urls/spotify"));
+			assertEquals(expected.at("/album/name"), actual.at("/album/name"));
+			assertEquals(expected.at("/album/images/0/url"), actual.at("/album/images/0/url"));
+			assertEquals(expected.at("/artists/0/id"), actual.at("/artists/0/id"));
+			assertEquals(expected.at("/artists/0/name"), actual.at("/artists/0/name"));
+			assertFalse(actual.has("available_markets")); // projection only
+		}
+	}
+
+	@Test
+	void topArtistsKeepGenresFollowersAndImages() throws Exception {
+		byte[] payload = payloads.topArtists(20);
+		Paging<Artist> page = objectMapper.readerFor(new TypeReference<Paging<Artist>>() {}).readValue(payload);
+
+		JsonNode in = objectMapper.readTree(payload);
+		JsonNode out = objectMapper.readTree(objectMapper.writeValueAsBytes(page));
+		for (int i = 0; i < 20; i++) {
+			JsonNode expected = in.get("items").get(i);
+			JsonNode actual = out.get("items").get(i);
+			for (String field : List.of("id", "name", "uri", "genres", "popularity")) {
+				assertEquals(expected.get(field), actual.get(field), field);
+			}
+			assertEquals(expected.at("/followers/total"), actual.at("/followers/total"));
+			assertEquals(expected.at("/external_urls/spotify"), actual.at("/external_urls/spotify"));
+			assertEquals(expected.at("/images/0/url"), actual.at("/images/0/url"));
+		}
+	}
+
+	@Test
+	void profileKeepsDisplayNameImagesAndLink() throws Exception {
+		byte[] payload = payloads.profile("user-1");
+		UserProfile user = objectMapper.readerFor(UserProfile.class).readValue(payload);
+
+		JsonNode in = objectMapper.readTree(payload);
+		JsonNode out = objectMapper.readTree(objectMapper.writeValueAsBytes(user));
+		assertEquals("user-1", out.get("id").asText());
+		assertEquals(in.get("display_name"), out.get("display_name"));
+		assertEquals(in.at("/external_urls/spotify"), out.at("/external_urls/spotify"));
+		assertEquals(in.at("/images/0/url"), out.at("/images/0/url"));
+		assertFalse(out.has("email"));
+	}
+}
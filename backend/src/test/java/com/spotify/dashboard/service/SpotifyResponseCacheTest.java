@@ -0,0 +1,135 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.spotify.dashboard.config.SpotifyCacheProperties;
+import com.spotify.dashboard.model.Paging;
+
+class SpotifyResponseCacheTest {
+
+	private static <T> CompletableFuture<T> load(AtomicInteger loads, T value) {
+		loads.incrementAndGet();
+		return CompletableFuture.completedFuture(value);
+	}
+
+	@Test
+	void eachEndpointExpiresAfterItsOwnTtl() throws Exception {
+		SpotifyCacheProperties props = new SpotifyCacheProperties();
+		props.setProfileTtl(Duration.ofHours(1));
+		props.setTopItemsTtl(Duration.ofMillis(20));
+		props.setStaleTtl(Duration.ZERO); // gone right at the TTL, no stale window
+		SpotifyResponseCache cache = new SpotifyResponseCache(props);
+		AtomicInteger profileLoads = new AtomicInteger();
+		AtomicInteger trackLoads = new AtomicInteger();
+
+		for (int i = 0; i < 2; i++) {
+			cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0, () -> load(profileLoads, "me")).join();
+			cache.get("token", SpotifyResponseCache.TOP_TRACKS, "short_term", 50, 0, () -> load(trackLoads, "tracks")).join();
+			Thread.sleep(40);
+		}
+
+		assertEquals(1, profileLoads.get()); // still within its hour
+		assertEquals(2, trackLoads.get()); // expired in between
+		assertEquals(0, cache.staleServedCount());
+	}
+
+	@Test
+	void entriesAreKeyedByTokenHashAndCountHitsAndMisses() {
+		SpotifyResponseCache cache = new SpotifyResponseCache(new SpotifyCacheProperties());
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get("token-a", SpotifyResponseCache.TOP_ARTISTS, "long_term", 50, 0, () -> load(loads, "a")).join();
+		assertEquals("a", cache.get("token-a", SpotifyResponseCache.TOP_ARTISTS, "long_term", 50, 0, () -> load(loads, "x")).join());
+		assertEquals("b", cache.get("token-b", SpotifyResponseCache.TOP_ARTISTS, "long_term", 50, 0, () -> load(loads, "b")).join());
+
+		assertEquals(2, loads.get()); // another user's token never gets the first user's response
+		assertEquals(Set.of(
+			new SpotifyResponseCache.Key(TokenHashes.of("token-a"), SpotifyResponseCache.TOP_ARTISTS, "long_term", 50, 0),
+			new SpotifyResponseCache.Key(TokenHashes.of("token-b"), SpotifyResponseCache.TOP_ARTISTS, "long_term", 50, 0)),
+			cache.keys()); // hashes only, the raw bearer string isn't in any key
+		assertEquals(1, cache.stats().hitCount());
+		assertEquals(2, cache.stats().missCount());
+	}
+
+	@Test
+	void bigResponsesWeighMoreAndGetEvictedByWeight() throws Exception {
+		SpotifyCacheProperties props = new SpotifyCacheProperties();
+		props.setMaximumWeight(100);
+		SpotifyResponseCache cache = new SpotifyResponseCache(props);
+		List<String> sixty = Collections.nCopies(60, "track");
+
+		for (String token : List.of("token-a", "token-b")) { // 61 each, two don't fit in 100
+			cache.get(token, SpotifyResponseCache.TOP_TRACKS, "short_term", 50, 0,
+				() -> CompletableFuture.completedFuture(new Paging<>(sixty, 60, 50, 0))).join();
+		}
+		for (int i = 0; i < 500 && cache.stats().evictionCount() == 0; i++) {
+			Thread.sleep(10); // Caffeine evicts in the background
+		}
+
+		assertEquals(1, cache.stats().evictionCount());
+		assertEquals(61, cache.stats().evictionWeight());
+		assertEquals(1, cache.keys().size());
+	}
+
+	@Test
+	void staleResponseIsServedRightAwayAndRefreshedInTheBackground() throws Exception {
+		SpotifyCacheProperties props = new SpotifyCacheProperties();
+		props.setProfileTtl(Duration.ofMillis(20));
+		SpotifyResponseCache cache = new SpotifyResponseCache(props);
+		AtomicInteger loads = new AtomicInteger();
+		CompletableFuture<String> refresh = new CompletableFuture<>();
+
+		cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0, () -> CompletableFuture.completedFuture("v1")).join();
+		Thread.sleep(40); // now stale
+
+		// Spotify is slow to answer the refresh, the caller still gets the old value immediately
+		String served = cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0, () -> {
+			loads.incrementAndGet();
+			return refresh;
+		}).getNow("not served immediately");
+		assertEquals("v1", served);
+		cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0, () -> {
+			loads.incrementAndGet();
+			return refresh;
+		});
+		assertEquals(1, loads.get()); // only one refresh at a time
+
+		refresh.complete("v2");
+		assertEquals("v2", cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0,
+			() -> CompletableFuture.completedFuture("unused")).join());
+		assertEquals(2, cache.staleServedCount());
+	}
+
+	@Test
+	void staleCopyIsKeptThroughOutagesButDroppedWhenTheTokenIsRejected() throws Exception {
+		SpotifyCacheProperties props = new SpotifyCacheProperties();
+		props.setProfileTtl(Duration.ofMillis(20));
+		SpotifyResponseCache cache = new SpotifyResponseCache(props);
+		cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0, () -> CompletableFuture.completedFuture("v1")).join();
+		Thread.sleep(40); // now stale
+
+		// Spotify is down: the refresh fails, the stale copy keeps being served
+		cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0,
+			() -> CompletableFuture.failedFuture(new SpotifyApiException(503, "503 Service Unavailable"))).join();
+		assertEquals("v1", cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0,
+			() -> CompletableFuture.failedFuture(new SpotifyApiException(401, "401 Unauthorized"))).join());
+
+		// that last refresh was turned down, so the next read goes to Spotify and fails like it
+		CompletableFuture<String> next = cache.get("token", SpotifyResponseCache.PROFILE, null, 0, 0,
+			() -> CompletableFuture.failedFuture(new SpotifyApiException(401, "401 Unauthorized")));
+		CompletionException error = assertThrows(CompletionException.class, next::join);
+		assertEquals(401, ((SpotifyApiException) error.getCause()).getStatus());
+		assertEquals(2, cache.refreshFailureCount());
+	}
+}
@@ -0,0 +1,164 @@
+package com.spotify.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.spotify.dashboard.config.SpotifyTokenProperties;
+
+class SpotifyTokenStoreTest {
+
+	private final RestTemplate restTemplate = mock(RestTemplate.class);
+	private final SpotifyTokenStore store = new SpotifyTokenStore(restTemplate, new SpotifyTokenProperties(),
+		"client", "secret", "http://localhost/callback", Runnable::run);
+
+	@SuppressWarnings("unchecked")
+	private void tokenEndpointReturns(Map<String, Object> body) {
+		when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+			.thenReturn(ResponseEntity.ok(body));
+	}
+
+	private static String login(SpotifyTokenStore store, Map<String, Object> tokens) {
+		String session = store.startSession(tokens);
+		store.identify(session, "user");
+		return session;
+	}
+
+	@Test
+	void unknownTokensGoThroughUnchanged() {
+		assertEquals("someone-else", store.upstreamToken("someone-else"));
+	}
+
+	@Test
+	void refreshesTokensThatAreAboutToExpireAndKeepsTheSession() {
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "refresh-1", "expires_in", 60));
+		tokenEndpointReturns(Map.of("access_token", "fresh-token", "expires_in", 3600));
+
+		store.refreshExpiring(); // 60s left is inside the 5 minute margin
+
+		assertEquals("fresh-token", store.upstreamToken(session));
+		assertEquals(1L, store.stats().get("refreshes"));
+	}
+
+	@Test
+	void spotifyTokensAreNotSessionHandles() {
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "refresh-1", "expires_in", 3600));
+
+		assertEquals("login-token", store.upstreamToken(session));
+		// a leaked access token is just a Spotify token, it doesn't unlock the session or its refresh token
+		assertEquals("login-token", store.upstreamToken("login-token"));
+		assertNull(store.userId("login-token"));
+		assertEquals("user", store.userId(session));
+	}
+
+	@Test
+	void sessionsEndAfterTheirLifetimeEvenWhileInUse() throws Exception {
+		SpotifyTokenProperties props = new SpotifyTokenProperties();
+		props.setSessionLifetime(Duration.ofMillis(300));
+		SpotifyTokenStore store = new SpotifyTokenStore(restTemplate, props, "client", "secret", "http://localhost/callback", Runnable::run);
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "refresh-1", "expires_in", 3600));
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(store.isActive(session));
+			Thread.sleep(50);
+		}
+		Thread.sleep(300);
+
+		assertFalse(store.isActive(session));
+		assertEquals(session, store.upstreamToken(session)); // unknown now, like any other token
+	}
+
+	@Test
+	void backgroundJobsGetTheSessionIdNotTheSpotifyToken() {
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "refresh-1", "expires_in", 3600));
+		Map<String, String> seen = new HashMap<>();
+
+		store.forEachSession(seen::put);
+
+		assertEquals(Map.of("user", session), seen);
+		assertEquals("login-token", RequestPriority.background(() -> store.upstreamToken(session)));
+	}
+
+	@Test
+	void endingASessionForgetsItsTokens() {
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "refresh-1", "expires_in", 3600));
+		String otherDevice = login(store, Map.of("access_token", "other-token", "refresh_token", "refresh-2", "expires_in", 3600));
+
+		store.endSession(session);
+
+		assertFalse(store.isActive(session));
+		assertNull(store.userId(session));
+		assertEquals("other-token", store.upstreamToken(otherDevice)); // logging out on one device doesn't touch the other
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void leavesTokensWithPlentyOfTimeLeftAlone() {
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "refresh-1", "expires_in", 3600));
+
+		store.refreshExpiring();
+
+		assertEquals("login-token", store.upstreamToken(session));
+		verify(restTemplate, never()).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void dropsTheSessionWhenTheRefreshTokenIsRejected() {
+		SpotifyTokenProperties props = new SpotifyTokenProperties();
+		props.setRefreshMargin(Duration.ofHours(2)); // everything is due
+		SpotifyTokenStore store = new SpotifyTokenStore(restTemplate, props, "client", "secret", "http://localhost/callback", Runnable::run);
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "revoked", "expires_in", 3600));
+		when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+			.thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST, "invalid_grant"));
+
+		store.refreshExpiring();
+
+		assertFalse(store.isActive(session));
+		assertEquals(0L, store.stats().get("sessions"));
+	}
+
+	@Test
+	void rejectedRefreshIsTriedAgainOnTheNextCheck() {
+		AtomicBoolean full = new AtomicBoolean(true);
+		SpotifyTokenStore store = new SpotifyTokenStore(restTemplate, new SpotifyTokenProperties(), "client", "secret",
+			"http://localhost/callback", task -> {
+				if (full.get()) {
+					throw new RejectedExecutionException("queue full");
+				}
+				task.run();
+			});
+		String session = login(store, Map.of("access_token", "login-token", "refresh_token", "refresh-1", "expires_in", 60));
+		tokenEndpointReturns(Map.of("access_token", "fresh-token", "expires_in", 3600));
+
+		store.refreshExpiring(); // doesn't throw
+		assertEquals("login-token", store.upstreamToken(session));
+
+		full.set(false);
+		store.refreshExpiring();
+		assertEquals("fresh-token", store.upstreamToken(session));
+	}
+}
@@ -32,12 +32,12 @@ export default function CallbackPage() {
         return;
       }
 
-      // Exchange code for tokens directly with Spotify
-      const { access_token, expires_in } = await exchangeCodeForTokens(code);
+      // Exchange the code on the backend, the Spotify tokens stay there and we get an HttpOnly session cookie
+      const { expires_in } = await exchangeCodeForTokens(code);
 
-      // Store tokens in cookies (no domain restriction for localhost/127.0.0.1 compatibility)
-      
-      Cookies.set('spotify_access_token', access_token, {
+      // Remember that we're logged in (not a secret, just so we know whether to ask for the user)
+      // (no domain restriction for localhost/127.0.0.1 compatibility)
+      Cookies.set('spotify_logged_in', '1', {
         expires: new Date(Date.now() + expires_in * 1000),
         secure: false,
         sameSite: 'lax',
@@ -4,7 +4,7 @@ import { useEffect, useState } from "react";
 import Cookies from "js-cookie";
 import { User } from "@/types";
 import { api } from "@/lib/api";
-import { getAuthUrl } from "@/lib/spotifyAuth";
+import { getAuthUrl, logoutSession } from "@/lib/spotifyAuth";
 
 export function useAuth() {
     const [user, setUser] = useState<User | null>(null);
@@ -15,8 +15,7 @@ export function useAuth() {
     }, []);
 
     const checkAuthStatus = async () => {
-        const token = Cookies.get('spotify_access_token');
-        if (!token) {
+        if (!Cookies.get('spotify_logged_in')) {
             setIsLoading(false);
             return;
         }
@@ -28,7 +27,7 @@ export function useAuth() {
             }
         } catch (error: unknown) {
             if (error instanceof Error && 'response' in error && (error.response as { status?: number })?.status === 401) {
-                Cookies.remove('spotify_access_token');
+                Cookies.remove('spotify_logged_in');
             }
         } finally {
             setIsLoading(false);
@@ -39,8 +38,13 @@ export function useAuth() {
         window.location.href = getAuthUrl() + '&show_dialog=true';
     };
 
-    const logout = () => {
-        Cookies.remove('spotify_access_token');
+    const logout = async () => {
+        try {
+            await logoutSession();
+        } catch {
+            // backend unreachable, the session still runs out on its own
+        }
+        Cookies.remove('spotify_logged_in');
         setUser(null);
         window.location.href = '/';
     };
@@ -3,33 +3,22 @@ import Cookies from 'js-cookie';
 
 const API_BASE_URL = process.env.NEXT_PUBLIC_API_BASE_URL || 'http://localhost:8080';
 
+// the backend's session cookie (HttpOnly, so we never see it) goes along with every request
 export const api = axios.create({
   baseURL: API_BASE_URL,
+  withCredentials: true,
   headers: {
     'Content-Type': 'application/json',
   },
 });
 
-api.interceptors.request.use(
-  (config) => {
-    const token = Cookies.get('spotify_access_token');
-    if (token) {
-      config.headers.Authorization = `Bearer ${token}`;
-    }
-    return config;
-  },
-  (error) => {
-    return Promise.reject(error);
-  }
-);
-
 // handle 401s by redirecting to login
 api.interceptors.response.use(
   (response) => response,
   (error) => {
     if (error.response?.status === 401) {
-      // token expired, redirect to login
-      Cookies.remove('spotify_access_token');
+      // session expired or logged out, redirect to login
+      Cookies.remove('spotify_logged_in');
       window.location.href = '/';
     }
     return Promise.reject(error);
@@ -14,6 +14,7 @@ export const exchangeCodeForTokens = async (code: string) => {
   const response = await fetch(`${API_BASE_URL}/api/spotify/auth/callback`, {
     method: 'POST',
     headers: { 'Content-Type': 'application/json' },
+    credentials: 'include', // so the browser keeps the session cookie the backend sets
     body: JSON.stringify({ code }),
   });
 
@@ -23,3 +24,12 @@ export const exchangeCodeForTokens = async (code: string) => {
 
   return response.json();
 };
+
+// ends the session on the backend (and clears its cookie)
+export const logoutSession = async () => {
+  const API_BASE_URL = process.env.NEXT_PUBLIC_API_BASE_URL || 'http://localhost:8080';
+  await fetch(`${API_BASE_URL}/api/spotify/auth/logout`, {
+    method: 'POST',
+    credentials: 'include',
+  });
+};